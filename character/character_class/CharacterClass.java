@@ -57,6 +57,12 @@ public class CharacterClass {
 //		}
 //	}
 
+	/**
+	 * Shared placeholder class, until classes are implemented. Has no id, so
+	 * creating and loading Characters takes no id from the sequence.
+	 */
+	private static final CharacterClass placeholder = createPlaceholder();
+
 	@SuppressWarnings("unused")
 	private CharacterClass() {
 	}
@@ -67,6 +73,19 @@ public class CharacterClass {
 		className = "Novice";
 	}
 
+	private static CharacterClass createPlaceholder() {
+		CharacterClass placeholder = new CharacterClass();
+		placeholder.className = "Novice";
+		return placeholder;
+	}
+
+	/**
+	 * @return the shared placeholder CharacterClass, which is never persisted
+	 */
+	public static CharacterClass getPlaceholder() {
+		return placeholder;
+	}
+
 	public int getId() {
 		return id;
 	}
@@ -36,16 +36,52 @@ import fireengine.util.MyLogger;
  * @author Ben Hook
  */
 public abstract class Action extends Command {
+	/**
+	 * Scheduling priority of an Action, used to keep important commands (such as
+	 * movement, quitting and admin commands) moving when the server is overloaded,
+	 * ahead of chat and other cosmetic commands.
+	 *
+	 * @author Ben Hook
+	 */
+	public static enum PRIORITY {
+		HIGH, NORMAL, LOW
+	}
+
+	/**
+	 * Name this Action is recorded under by the {@link ActionProfiler}.
+	 */
+	private final String profileName = getClass().getSimpleName();
+
 	protected Action() {
 		super();
 	}
 
 	/**
-	 * Will do any necessary setup then call the doAction().
+	 * Returns the scheduling priority of this Action. Subclasses override this to
+	 * be anything other than {@link PRIORITY#NORMAL}.
+	 *
+	 * @return scheduling priority
+	 */
+	public PRIORITY getPriority() {
+		return PRIORITY.NORMAL;
+	}
+
+	/**
+	 * Will do any necessary setup then call the doAction(), recording it with the
+	 * {@link ActionProfiler} if profiling is enabled.
 	 * 
 	 * @return The output
 	 */
 	public ClientConnectionOutput callAction(Character character, Matcher matcher) {
+		ActionProfiler.Probe probe = ActionProfiler.start();
+		try {
+			return checkAndDoAction(character, matcher);
+		} finally {
+			ActionProfiler.stop(probe, profileName);
+		}
+	}
+
+	private ClientConnectionOutput checkAndDoAction(Character character, Matcher matcher) {
 		ClientConnectionOutput output = new ClientConnectionOutput();
 
 		if (character == null) {
@@ -63,6 +99,7 @@ public abstract class Action extends Command {
 					if (Character.checkAdminPrivs((Player) character)) {
 						return doAction((Player) character, matcher);
 					}
+					return output;
 				} else {
 					return doAction((Player) character, matcher);
 				}
@@ -72,7 +109,7 @@ public abstract class Action extends Command {
 		}
 
 		if (this instanceof AdminAction) {
-			if (character instanceof Player) {
+			if ((character instanceof Player) && Character.checkAdminPrivs((Player) character)) {
 				return doAction((Player) character, matcher);
 			} else {
 				return output;
@@ -0,0 +1,223 @@
+package fireengine.character.command.action;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    ActionProfiler.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Records how long {@link Action}s take and how much they allocate, per Action
+ * class, to find which commands are expensive. Sections within an Action (such
+ * as the map rendering in {@link fireengine.character.command.action.general.Move})
+ * can be recorded under their own name the same way.
+ *
+ * <p>
+ * Off by default and toggled at runtime; while off {@link #start()} returns null
+ * and nothing else is done. Latency is kept in a power of two (microsecond)
+ * bucket histogram, so percentiles are accurate to within a factor of two.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class ActionProfiler {
+	private static final int BUCKETS = 32;
+
+	private static volatile boolean enabled = false;
+	private static final ConcurrentHashMap<String, ProfileStats> statsMap = new ConcurrentHashMap<>();
+	private static final com.sun.management.ThreadMXBean threadBean = findThreadBean();
+
+	private ActionProfiler() {
+	}
+
+	/**
+	 * Start point of a single recording, returned by {@link ActionProfiler#start()}.
+	 */
+	public static final class Probe {
+		private final long startNanos;
+		private final long startBytes;
+
+		private Probe(long startNanos, long startBytes) {
+			this.startNanos = startNanos;
+			this.startBytes = startBytes;
+		}
+	}
+
+	/**
+	 * Invocation count, latency histogram and allocated bytes for one name.
+	 */
+	private static final class ProfileStats {
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+		final AtomicLong allocatedBytes = new AtomicLong();
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		void record(long nanos, long bytes) {
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+			if (bytes > 0) {
+				allocatedBytes.addAndGet(bytes);
+			}
+			long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(nanos));
+			buckets.incrementAndGet(Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros)));
+		}
+
+		/**
+		 * @return upper bound in milliseconds of the bucket holding the percentile,
+		 *         capped at the maximum seen
+		 */
+		double percentileMillis(long count, double percentile) {
+			double maxMillis = maxNanos.get() / 1000000.0;
+			long target = (long) Math.ceil(count * percentile);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= target) {
+					return Math.min(maxMillis, (1L << (i + 1)) / 1000.0);
+				}
+			}
+			return maxMillis;
+		}
+	}
+
+	private static com.sun.management.ThreadMXBean findThreadBean() {
+		try {
+			java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+				if (sunBean.isThreadAllocatedMemorySupported()) {
+					sunBean.setThreadAllocatedMemoryEnabled(true);
+					return sunBean;
+				}
+			}
+		} catch (Exception e) {
+			MyLogger.log(Level.WARNING, "ActionProfiler: Could not enable thread allocation measurement.", e);
+		}
+		return null;
+	}
+
+	private static long allocatedBytes() {
+		if (threadBean == null) {
+			return 0;
+		}
+		return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enabled) {
+		ActionProfiler.enabled = enabled;
+		MyLogger.log(Level.INFO, String.format("ActionProfiler: Profiling %s.", enabled ? "enabled" : "disabled"));
+	}
+
+	/**
+	 * Clears all recorded data.
+	 */
+	public static void reset() {
+		statsMap.clear();
+	}
+
+	/**
+	 * Starts recording, to be passed to {@link #stop(Probe, String)} once the work
+	 * is done.
+	 *
+	 * @return Probe to stop, or null if profiling is disabled
+	 */
+	public static Probe start() {
+		if (!enabled) {
+			return null;
+		}
+		return new Probe(System.nanoTime(), allocatedBytes());
+	}
+
+	/**
+	 * Finishes recording, adding the time taken and bytes allocated since the
+	 * Probe was started under the name.
+	 *
+	 * @param probe Probe from {@link #start()}, may be null
+	 * @param name  name to record under, such as the Action class name
+	 */
+	public static void stop(Probe probe, String name) {
+		if (probe == null) {
+			return;
+		}
+		long nanos = System.nanoTime() - probe.startNanos;
+		long bytes = (threadBean == null) ? 0 : allocatedBytes() - probe.startBytes;
+		statsMap.computeIfAbsent(name, k -> new ProfileStats()).record(nanos, bytes);
+	}
+
+	/**
+	 * Returns a report of recorded data, one line per name, sorted by name.
+	 *
+	 * @return report lines
+	 */
+	public static List<String> getReport() {
+		List<String> report = new ArrayList<>();
+		report.add(String.format("Action profiling is %s%s.", enabled ? "enabled" : "disabled",
+				(threadBean == null) ? " (allocation measurement not supported)" : ""));
+		report.add(String.format("%-28s %8s %9s %9s %9s %9s %10s", "Name", "Count", "Mean ms", "p50 ms", "p99 ms",
+				"Max ms", "KB/call"));
+
+		for (Map.Entry<String, ProfileStats> entry : new TreeMap<>(statsMap).entrySet()) {
+			ProfileStats stats = entry.getValue();
+			long count = stats.count.get();
+			if (count == 0) {
+				continue;
+			}
+			report.add(String.format("%-28s %8d %9.3f %9.3f %9.3f %9.3f %10.1f", entry.getKey(), count,
+					(stats.totalNanos.get() / (double) count) / 1000000.0, stats.percentileMillis(count, 0.5),
+					stats.percentileMillis(count, 0.99), stats.maxNanos.get() / 1000000.0,
+					(stats.allocatedBytes.get() / (double) count) / 1024.0));
+		}
+		return report;
+	}
+
+	/**
+	 * Writes the report from {@link #getReport()} to a file, appending to it if it
+	 * already exists.
+	 *
+	 * @param filePath path of file to write to
+	 * @throws IOException if the file could not be written
+	 */
+	public static void dumpReport(String filePath) throws IOException {
+		try (PrintWriter writer = new PrintWriter(new FileWriter(filePath, true))) {
+			writer.println(String.format("Action profile at %s", new Date()));
+			for (String line : getReport()) {
+				writer.println(line);
+			}
+			writer.println();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package fireengine.character.command.action;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    ActionRegistry.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Process-wide registry of {@link Action} singletons. Actions hold no per-use
+ * state (their Patterns are static), so one instance of each Action class is
+ * shared by every Skillset and every Character.
+ *
+ * @author Ben Hook
+ */
+public class ActionRegistry {
+	private static final ConcurrentHashMap<Class<? extends Action>, Action> actionMap = new ConcurrentHashMap<>();
+
+	private ActionRegistry() {
+	}
+
+	/**
+	 * Returns the shared instance of the given {@link Action} class, creating it
+	 * on first request.
+	 *
+	 * @param actionClass Action class to get the instance of
+	 * @return shared Action instance, or null if it could not be created
+	 */
+	public static <T extends Action> T get(Class<T> actionClass) {
+		Action action = actionMap.computeIfAbsent(actionClass, ActionRegistry::createAction);
+		return actionClass.cast(action);
+	}
+
+	private static Action createAction(Class<? extends Action> actionClass) {
+		try {
+			return actionClass.getDeclaredConstructor().newInstance();
+		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
+				| NoSuchMethodException | SecurityException e) {
+			MyLogger.log(Level.SEVERE,
+					String.format("ActionRegistry: Exception while trying to create Action '%s'.", actionClass.getName()),
+					e);
+			return null;
+		}
+	}
+}
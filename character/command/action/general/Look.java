@@ -1,7 +1,7 @@
 package fireengine.character.command.action.general;
 
-import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -10,7 +10,6 @@ import fireengine.character.command.action.Action;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exit.RoomExit;
 import fireengine.gameworld.map.room.Room;
 import fireengine.util.StringUtils;
@@ -64,36 +63,29 @@ public class Look extends Action {
 
 		Room lookRoom = character.getRoom();
 		if (direction != null) {
-			try {
-				RoomExit roomExit = lookRoom.getExit(direction);
-				if (roomExit != null) {
-					if (roomExit.isOpen()) {
-						lookRoom = character.getMap().getRoom(lookRoom, direction);
-						output.addPart("You look " + StringUtils.capitalise(direction.toString()) + ".", null, null);
-						output.newLine();
-					} else {
-						output.addPart("Could not look " + StringUtils.capitalise(direction.toString())
-								+ " as the exit that-a-way is closed.", null, null);
-						return output;
-					}
+			RoomExit roomExit = lookRoom.getExit(direction);
+			if (roomExit != null) {
+				if (roomExit.isOpen()) {
+					lookRoom = character.getMap().getRoom(lookRoom, direction);
+					output.addPart("You look " + StringUtils.capitalise(direction.toString()) + ".", null, null);
+					output.newLine();
 				} else {
 					output.addPart("Could not look " + StringUtils.capitalise(direction.toString())
-							+ " as there is no exit that-a-way.", null, null);
+							+ " as the exit that-a-way is closed.", null, null);
 					return output;
 				}
-			} catch (MapExceptionDirectionNotSupported e) {
+			} else {
 				output.addPart("Could not look " + StringUtils.capitalise(direction.toString())
-						+ " as the direction is no supported for LOOK." + " Please contact a God to get this fixed.",
-						null, null);
+						+ " as there is no exit that-a-way.", null, null);
 				return output;
 			}
 		}
 
-		output.addPart("\"" + lookRoom.getName() + "\" " + lookRoom.getCoord().toString(), null, null);
+		output.addPart("\"" + lookRoom.getName() + "\" " + lookRoom.getPosition().toString(), null, null);
 		output.newLine();
 		output.addPart(lookRoom.getDescription(), null, null);
 		output.newLine();
-		ArrayList<Player> playerList = lookRoom.getPlayers();
+		List<Player> playerList = lookRoom.getPlayers();
 		if (playerList.isEmpty()) {
 			output.addPart("You see no one here.", null, null);
 		} else {
@@ -34,7 +34,6 @@ public class Map extends Action {
 
 	@Override
 	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
-		// TODO Some map size limit
 		String sizeString = matcher.group(1);
 		int size;
 		if (sizeString == null) {
@@ -59,6 +58,11 @@ public class Map extends Action {
 		return output;
 	}
 
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.LOW;
+	}
+
 	public Pattern getPattern() {
 		return pattern;
 	}
@@ -6,11 +6,13 @@ import java.util.regex.Pattern;
 
 import fireengine.character.Character;
 import fireengine.character.command.action.Action;
+import fireengine.character.command.action.ActionProfiler;
+import fireengine.character.command.action.ActionRegistry;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
 import fireengine.gameworld.map.Direction.DIRECTION;
 import fireengine.gameworld.map.GameMap;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
+import fireengine.gameworld.map.MapRegion;
 import fireengine.gameworld.map.exception.MapExceptionExitNull;
 import fireengine.gameworld.map.exception.MapExceptionExitRoomNull;
 import fireengine.gameworld.map.room.Room;
@@ -61,9 +63,36 @@ public class Move extends Action {
 	public ClientConnectionOutput doAction(Character character, Direction.DIRECTION direction) {
 		ClientConnectionOutput output = new ClientConnectionOutput();
 
+		if (!moveCharacter(character, direction, output)) {
+			return output;
+		}
+
+		output.addPart("You move " + StringUtils.capitalise(direction.toString()) + ".", null, null);
+		ActionProfiler.Probe probe = ActionProfiler.start();
+		output.addOutput(ActionRegistry.get(Look.class).doAction(character, (DIRECTION) null));
+		ActionProfiler.stop(probe, "Move: Look");
+		probe = ActionProfiler.start();
+		output.addOutput(GameMap.displayMap(character.getRoom(), 3));
+		ActionProfiler.stop(probe, "Move: displayMap");
+
+		return output;
+	}
+
+	/**
+	 * Moves the {@link Character} one room in the given direction, letting both
+	 * rooms know, but without rendering the new room for the Character. Used by
+	 * {@link #doAction(Character, DIRECTION)} and {@link Speedwalk} to move a step
+	 * at a time.
+	 * 
+	 * @param character Character to move
+	 * @param direction direction to move in
+	 * @param output    output to append the reason to if the move fails
+	 * @return true if the Character moved
+	 */
+	public boolean moveCharacter(Character character, Direction.DIRECTION direction, ClientConnectionOutput output) {
 		try {
 			Room currentRoom = character.getRoom();
-			if (currentRoom.getExit(direction) == null) {
+			if (!currentRoom.hasExit(direction)) {
 				throw new MapExceptionExitNull("Character: Cannot move in specified direction, exit is null.");
 			}
 			Room toRoom = character.getMap().getRoom(character.getRoom(), direction);
@@ -73,6 +102,21 @@ public class Move extends Action {
 						character.getRoom().getName()));
 			}
 
+			// Within a command, hold the destination region as well while moving, then
+			// only the destination region after.
+			GameMap gameMap = character.getMap();
+			MapRegion fromRegion = gameMap.getRegion(currentRoom);
+			MapRegion toRegion = gameMap.getRegion(toRoom);
+			boolean changeRegion = (fromRegion != null) && (toRegion != null) && (fromRegion != toRegion)
+					&& fromRegion.isHeldByCurrentThread();
+			if (changeRegion && !MapRegion.acquire(toRegion)) {
+				// Had to let go of this region to lock in order; check the way is still there.
+				if (!currentRoom.hasExit(direction) || (gameMap.getRoom(currentRoom, direction) != toRoom)) {
+					MapRegion.release(toRegion);
+					throw new MapExceptionExitNull("Character: Exit removed while waiting to move.");
+				}
+			}
+
 			// Anything blocking movement goes here //
 
 			// Actual moving //
@@ -82,28 +126,28 @@ public class Move extends Action {
 			currentRoom.sendToRoomExcluding(new ClientConnectionOutput(
 					character.getName() + " exits to the " + direction.toString() + ".", null, null), character);
 
-			output.addPart("You move " + StringUtils.capitalise(direction.toString()) + ".", null, null);
-			output.addOutput(new Look().doAction(character, (DIRECTION) null));
-			output.addOutput(GameMap.displayMap(character.getRoom(), 3));
-
 			toRoom.sendToRoomExcluding(new ClientConnectionOutput(
 					character.getName() + " enters from the " + StringUtils.capitalise(direction.toString()) + ".",
 					null, null), character);
 
+			if (changeRegion) {
+				MapRegion.release(fromRegion);
+			}
 		} catch (MapExceptionExitNull e) {
 			output.addPart("You see no way to move in that direction.", null, null);
-			return output;
-		} catch (MapExceptionDirectionNotSupported e) {
-			MyLogger.log(Level.WARNING, "Move: MapExceptionDirectionNotSupported while trying to move.", e);
-			output.addPart("You can't move in that direction.", null, null);
-			return output;
+			return false;
 		} catch (MapExceptionExitRoomNull e) {
 			MyLogger.log(Level.WARNING, "Move: MapExceptionExitRoomNull after check for exit.", e);
 			output.addPart("You see no room to move into that a-way.", null, null);
-			return output;
+			return false;
 		}
 
-		return output;
+		return true;
+	}
+
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.HIGH;
 	}
 
 	public Pattern getPattern() {
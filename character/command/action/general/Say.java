@@ -49,6 +49,11 @@ public class Say extends Action {
 		return output;
 	}
 
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.LOW;
+	}
+
 	public Pattern getPattern() {
 		return pattern;
 	}
@@ -0,0 +1,163 @@
+package fireengine.character.command.action.general;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fireengine.character.Character;
+import fireengine.character.command.action.Action;
+import fireengine.character.command.action.ActionRegistry;
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.map.Direction;
+import fireengine.gameworld.map.Direction.DIRECTION;
+import fireengine.gameworld.map.GameMap;
+import fireengine.util.StringUtils;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    Speedwalk.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Moves a {@link Character} along a whole path in one command, such as
+ * "n;n;e;e;u" or "3n2e" (optionally prefixed with RUN or SPEEDWALK). Only the
+ * final room is looked at and mapped, rather than every room along the way.
+ *
+ * <p>
+ * Two letter diagonals are read as one step, so "ne" is northeast rather than
+ * north then east.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class Speedwalk extends Action {
+	private static final String STEP_DIRECTION = "N(?:ORTH)?(?:E(?:AST)?|W(?:EST)?)?|S(?:OUTH)?(?:E(?:AST)?|W(?:EST)?)?|E(?:AST)?|W(?:EST)?|U(?:P)?|D(?:OWN)?";
+
+	private static Pattern pattern = compilePattern("(?:(?:RUN|SPEEDWALK) )?(\\d*(?:" + STEP_DIRECTION
+			+ ")(?: *;? *\\d*(?:" + STEP_DIRECTION + "))*)");
+	private static Pattern stepPattern = compilePattern("(\\d*)(" + STEP_DIRECTION + ")");
+
+	/**
+	 * Maximum number of steps that can be taken in one speedwalk.
+	 */
+	public static final int MAX_STEPS = 50;
+
+	public Speedwalk() {
+		super();
+	}
+
+	@Override
+	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
+		String pathText = matcher.group(1);
+		List<DIRECTION> path = parsePath(pathText);
+
+		if (path == null) {
+			return new ClientConnectionOutput(
+					String.format("Could not parse '%s' into a path of at most %d steps.", pathText, MAX_STEPS));
+		}
+
+		return doAction(character, path);
+	}
+
+	public ClientConnectionOutput doAction(Character character, List<DIRECTION> path) {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		ClientConnectionOutput failOutput = new ClientConnectionOutput();
+		Move move = ActionRegistry.get(Move.class);
+		StringBuilder moved = new StringBuilder();
+		int steps = 0;
+
+		for (DIRECTION direction : path) {
+			if (!move.moveCharacter(character, direction, failOutput)) {
+				break;
+			}
+			if (steps > 0) {
+				moved.append(", ");
+			}
+			moved.append(StringUtils.capitalise(direction.toString()));
+			steps++;
+		}
+
+		if (steps > 0) {
+			output.addPart(String.format("You move %s.", moved.toString()), null, null);
+		}
+		if (steps < path.size()) {
+			if (steps > 0) {
+				output.newLine();
+			}
+			output.addOutput(failOutput);
+		}
+		if (steps > 0) {
+			output.addOutput(ActionRegistry.get(Look.class).doAction(character, (DIRECTION) null));
+			output.addOutput(GameMap.displayMap(character.getRoom(), 3));
+		}
+
+		return output;
+	}
+
+	/**
+	 * Parses a speedwalk path into the list of directions to move in.
+	 *
+	 * @param text path such as "n;n;e;e;u" or "3n2e"
+	 * @return directions to move in order, or null if the path could not be parsed
+	 *         or is longer than {@link #MAX_STEPS}
+	 */
+	public static List<DIRECTION> parsePath(String text) {
+		List<DIRECTION> path = new ArrayList<>();
+		Matcher stepMatcher = stepPattern.matcher(text);
+		int position = 0;
+
+		while (stepMatcher.find()) {
+			for (int i = position; i < stepMatcher.start(); i++) {
+				char c = text.charAt(i);
+				if ((c != ' ') && (c != ';')) {
+					return null;
+				}
+			}
+			position = stepMatcher.end();
+
+			int count = 1;
+			if (!stepMatcher.group(1).isEmpty()) {
+				if (stepMatcher.group(1).length() > 3) {
+					return null;
+				}
+				count = Integer.parseInt(stepMatcher.group(1));
+			}
+			DIRECTION direction = Direction.parseDirection(stepMatcher.group(2));
+			if ((direction == null) || (count < 1) || ((path.size() + count) > MAX_STEPS)) {
+				return null;
+			}
+
+			for (int i = 0; i < count; i++) {
+				path.add(direction);
+			}
+		}
+
+		for (int i = position; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if ((c != ' ') && (c != ';')) {
+				return null;
+			}
+		}
+		if (path.isEmpty()) {
+			return null;
+		}
+		return path;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+}
@@ -0,0 +1,110 @@
+package fireengine.character.command.action.general;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fireengine.character.Character;
+import fireengine.character.command.action.Action;
+import fireengine.character.command.action.ActionRegistry;
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.map.Direction.DIRECTION;
+import fireengine.gameworld.map.GameMap;
+import fireengine.gameworld.map.RoomPosition;
+import fireengine.gameworld.map.room.Room;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    Travel.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Moves a {@link Character} along the shortest route to a room, given either
+ * as coordinates ("TRAVEL 4 -2" or "TRAVEL 4 -2 1") or as a room name ("TRAVEL
+ * TO TOWN SQUARE", which goes to the nearest room of that name). The route is
+ * found with the map's {@link fireengine.gameworld.map.PathFinder} and walked
+ * as a {@link Speedwalk}.
+ *
+ * <p>
+ * Routes longer than the travelMaxSteps setting are refused. Travel never
+ * loads rooms: on maps not fully loaded (see
+ * {@link GameMap#isFullyLoaded()}) only destinations and routes through rooms
+ * already loaded are found, which the reply says when no route is found.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class Travel extends Action {
+	static final int DEFAULT_MAX_STEPS = 100;
+
+	private static Pattern pattern = compilePattern("TRAVEL(?: TO)? (.+)");
+	private static Pattern coordinatePattern = compilePattern(
+			"(-?\\d{1,9})(?: *, *| +)(-?\\d{1,9})(?:(?: *, *| +)(-?\\d{1,9}))?");
+
+	public Travel() {
+		super();
+	}
+
+	@Override
+	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
+		String destinationText = matcher.group(1).trim();
+		Room room = character.getRoom();
+		GameMap gameMap = room.getMap();
+		List<DIRECTION> path;
+
+		Matcher coordinateMatcher = coordinatePattern.matcher(destinationText);
+		if (coordinateMatcher.matches()) {
+			int x = Integer.parseInt(coordinateMatcher.group(1));
+			int y = Integer.parseInt(coordinateMatcher.group(2));
+			int z = (coordinateMatcher.group(3) == null) ? room.getPosition().getZ()
+					: Integer.parseInt(coordinateMatcher.group(3));
+			Room destination = gameMap.getLoadedRoom(x, y, z);
+			if (destination == null) {
+				return new ClientConnectionOutput(
+						String.format("You know of no room at %s.", new RoomPosition(x, y, z).toString()));
+			}
+			path = gameMap.getPathFinder().findPath(room, destination);
+		} else {
+			path = gameMap.getPathFinder().findPathToName(room, destinationText);
+		}
+
+		if ((path == null) && !gameMap.isFullyLoaded()) {
+			return new ClientConnectionOutput("You can't find a way there through the parts of the map you know.");
+		}
+		return doAction(character, path);
+	}
+
+	public ClientConnectionOutput doAction(Character character, List<DIRECTION> path) {
+		if (path == null) {
+			return new ClientConnectionOutput("You can't find a way there.");
+		}
+		if (path.isEmpty()) {
+			return new ClientConnectionOutput("You are already there.");
+		}
+		int maxSteps = MathUtils.parseInt(ConfigLoader.getSetting("travelMaxSteps"), DEFAULT_MAX_STEPS);
+		if (path.size() > maxSteps) {
+			return new ClientConnectionOutput(
+					String.format("That is %d rooms away, too far to travel in one go.", path.size()));
+		}
+
+		return ActionRegistry.get(Speedwalk.class).doAction(character, path);
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+}
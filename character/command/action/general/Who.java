@@ -51,6 +51,11 @@ public class Who extends Action {
 		return output;
 	}
 
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.LOW;
+	}
+
 	public Pattern getPattern() {
 		return pattern;
 	}
@@ -66,6 +66,11 @@ public class QuitGame extends PlayerAction {
 		return output;
 	}
 
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.HIGH;
+	}
+
 	public Pattern getPattern() {
 		return pattern;
 	}
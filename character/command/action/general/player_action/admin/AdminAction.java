@@ -29,4 +29,13 @@ public abstract class AdminAction extends Action {
 	protected AdminAction() {
 		super();
 	}
+
+	/**
+	 * Admin Actions default to high priority, so that Admins can act on an
+	 * overloaded server.
+	 */
+	@Override
+	public PRIORITY getPriority() {
+		return PRIORITY.HIGH;
+	}
 }
@@ -0,0 +1,52 @@
+package fireengine.character.command.action.general.player_action.admin;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fireengine.character.Character;
+import fireengine.character.player.PlayerCache;
+import fireengine.client_io.ClientConnectionOutput;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    PlayerCacheInfo.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Shows {@link PlayerCache} metrics, such as how many players are cached and
+ * how often lookups find them there.
+ *
+ * @author Ben Hook
+ */
+public class PlayerCacheInfo extends AdminAction {
+	private static Pattern pattern = compilePattern("ADMIN PLAYERCACHE");
+
+	public PlayerCacheInfo() {
+		super();
+	}
+
+	@Override
+	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
+		return doAction(character);
+	}
+
+	public ClientConnectionOutput doAction(Character character) {
+		return PlayerCache.getPlayerCacheInfo();
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+}
@@ -0,0 +1,102 @@
+package fireengine.character.command.action.general.player_action.admin;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fireengine.character.Character;
+import fireengine.character.command.action.ActionProfiler;
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.client_io.ClientIOColour.COLOURS;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    Profile.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Controls the {@link ActionProfiler}: "ADMIN PROFILE" shows the report, and
+ * ON, OFF, RESET and DUMP turn profiling on or off, clear it, or write the
+ * report to the file set by actionProfileDumpFile in the server config.
+ *
+ * @author Ben Hook
+ */
+public class Profile extends AdminAction {
+	private static final String DEFAULT_DUMP_FILE = "action_profile.txt";
+
+	private static Pattern pattern = compilePattern("ADMIN PROFILE(?: (ON|OFF|RESET|DUMP))?");
+
+	public Profile() {
+		super();
+	}
+
+	@Override
+	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
+		return doAction(character, matcher.group(1));
+	}
+
+	public ClientConnectionOutput doAction(Character character, String option) {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+
+		if (option == null) {
+			boolean first = true;
+			for (String line : ActionProfiler.getReport()) {
+				if (!first) {
+					output.newLine();
+				}
+				output.addPart(line, null, null);
+				first = false;
+			}
+			return output;
+		}
+
+		switch (option.toUpperCase()) {
+		case "ON":
+			ActionProfiler.setEnabled(true);
+			output.addPart("Action profiling enabled.", COLOURS.GREEN, null);
+			break;
+		case "OFF":
+			ActionProfiler.setEnabled(false);
+			output.addPart("Action profiling disabled.", COLOURS.GREEN, null);
+			break;
+		case "RESET":
+			ActionProfiler.reset();
+			output.addPart("Action profiling data cleared.", COLOURS.GREEN, null);
+			break;
+		default:
+			String filePath = ConfigLoader.getSetting("actionProfileDumpFile");
+			if ((filePath == null) || filePath.isEmpty()) {
+				filePath = DEFAULT_DUMP_FILE;
+			}
+			try {
+				ActionProfiler.dumpReport(filePath);
+				output.addPart(String.format("Action profile written to '%s'.", filePath), COLOURS.GREEN, null);
+			} catch (IOException e) {
+				MyLogger.log(Level.WARNING, "Profile: Failed to write action profile.", e);
+				output.addPart(String.format("Failed to write action profile to '%s'.", filePath), COLOURS.RED, null);
+			}
+			break;
+		}
+
+		return output;
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+}
@@ -9,7 +9,6 @@ import fireengine.character.command.action.general.player_action.PlayerAction;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionExitExists;
 import fireengine.gameworld.map.exception.MapExceptionExitRoomNull;
 import fireengine.gameworld.map.exception.MapExceptionRoomNull;
@@ -92,12 +91,6 @@ public class CreateExit extends PlayerAction {
 					"Can't create exit %s from \"%s\", exit already exists there. Try DESTROY EXIT first if exit is oneway.",
 					direction.toString(), character.getRoom().getName()), e);
 			return output;
-		} catch (MapExceptionDirectionNotSupported e) {
-			MyLogger.log(Level.WARNING, "CreateExit: MapExceptionDirectionNotSupported while trying to createExit.", e);
-			output.addPart(String.format(
-					"Can't create exit %s from \"%s\", direction not supported in exit creation code. Contact a God to fix this.",
-					direction.toString(), character.getRoom().getName()), null, null);
-			return output;
 		} catch (CheckedHibernateException e) {
 			FireEngineMain.hibernateException(e);
 			return output;
@@ -9,7 +9,6 @@ import fireengine.character.command.action.general.player_action.PlayerAction;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionRoomExists;
 import fireengine.main.FireEngineMain;
 import fireengine.util.CheckedHibernateException;
@@ -78,12 +77,6 @@ public class CreateRoom extends PlayerAction {
 		} catch (MapExceptionRoomExists e) {
 			output.addPart("Cannot create room in the direction, room already exists there.", null, null);
 			return output;
-		} catch (MapExceptionDirectionNotSupported e) {
-			MyLogger.log(Level.WARNING, "CreateRoom: MapExceptionDirectionNotSupported while trying to createRoom.", e);
-			output.addPart(String.format(
-					"Can't create room %s from \"%s\", direction not supported in room creation code. Contact a God to fix this.",
-					direction.toString(), character.getRoom().getName()), null, null);
-			return output;
 		} catch (CheckedHibernateException e) {
 			FireEngineMain.hibernateException(e);
 			return output;
@@ -9,7 +9,6 @@ import fireengine.character.command.action.general.player_action.PlayerAction;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionExitRoomNull;
 import fireengine.gameworld.map.exception.MapExceptionRoomNull;
 import fireengine.main.FireEngineMain;
@@ -83,13 +82,6 @@ public class DestroyExit extends PlayerAction {
 		} catch (MapExceptionExitRoomNull e) {
 			output.addPart("Can't destroy exit as adjacent room is null.", null, null);
 			return output;
-		} catch (MapExceptionDirectionNotSupported e) {
-			MyLogger.log(Level.WARNING, "DestroyExit: MapExceptionDirectionNotSupported while trying to destroyExit.",
-					e);
-			output.addPart(String.format(
-					"Can't create exit %s from \"%s\", direction not supported in exit creation code. Contact a God to fix this.",
-					direction.toString(), character.getRoom().getName()), null, null);
-			return output;
 		} catch (CheckedHibernateException e) {
 			FireEngineMain.hibernateException(e);
 			return output;
@@ -9,7 +9,6 @@ import fireengine.character.command.action.general.player_action.PlayerAction;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.Direction;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionRoomNull;
 import fireengine.main.FireEngineMain;
 import fireengine.util.CheckedHibernateException;
@@ -78,13 +77,6 @@ public class DestroyRoom extends PlayerAction {
 		} catch (MapExceptionRoomNull e) {
 			output.addPart("Cannot destroy room in that direction, there is no room there.", null, null);
 			return output;
-		} catch (MapExceptionDirectionNotSupported e) {
-			MyLogger.log(Level.WARNING, "DestroyRoom: MapExceptionDirectionNotSupported while trying to destroyRoom.",
-					e);
-			output.addPart(String.format(
-					"Can't destroy room %s from \"%s\", direction not supported in room destruction code. Contact a God to fix this.",
-					direction.toString(), character.getRoom().getName()), null, null);
-			return output;
 		} catch (CheckedHibernateException e) {
 			FireEngineMain.hibernateException(e);
 			return output;
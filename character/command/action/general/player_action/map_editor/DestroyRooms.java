@@ -0,0 +1,92 @@
+package fireengine.character.command.action.general.player_action.map_editor;
+
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import fireengine.character.Character;
+import fireengine.character.command.action.general.player_action.PlayerAction;
+import fireengine.character.player.Player;
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.map.RoomPosition;
+import fireengine.main.FireEngineMain;
+import fireengine.util.CheckedHibernateException;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    DestroyRooms.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Map editor action destroying every room in a box, as "DESTROY ROOMS 0 0 TO 9
+ * 9". The spawn room and rooms with players in them are kept. The changes are
+ * saved in one transaction; see
+ * {@link fireengine.gameworld.map.GameMap#deleteRooms(RoomPosition, RoomPosition)}.
+ *
+ * @author Ben Hook
+ */
+public class DestroyRooms extends PlayerAction {
+	private static Pattern pattern = compilePattern("DESTROY ROOMS " + MapEditArea.AREA_PATTERN);
+
+	public DestroyRooms() {
+		super();
+	}
+
+	@Override
+	public ClientConnectionOutput doAction(Character character, Matcher matcher) {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+
+		if (character instanceof Player) {
+			if (Character.checkMapEditorPrivs((Player) character) == false) {
+				MyLogger.log(Level.WARNING,
+						"DestroyRooms: Non-map editor Character tried to doAction on a map editor only action that should have already been caught in the Action callAction checks.");
+				return output;
+			}
+
+		} else {
+			MyLogger.log(Level.WARNING,
+					"DestroyRooms: Non-player Character tried to doAction on a Player-only action that should have already been caught in the Action callAction checks.");
+			return output;
+		}
+
+		RoomPosition[] area = MapEditArea.parseArea(character, matcher, 1);
+		String sizeError = MapEditArea.checkSize(area);
+		if (sizeError != null) {
+			output.addPart(sizeError, null, null);
+			return output;
+		}
+
+		output.addOutput(doAction(character, area[0], area[1]));
+		return output;
+	}
+
+	public ClientConnectionOutput doAction(Character character, RoomPosition from, RoomPosition to) {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+
+		try {
+			int count = character.getMap().deleteRooms(from, to);
+			output.addPart(String.format("%d room(s) destroyed from %s to %s.", count, from.toString(), to.toString()), null, null);
+			return output;
+		} catch (CheckedHibernateException e) {
+			FireEngineMain.hibernateException(e);
+			return output;
+		}
+	}
+
+	public Pattern getPattern() {
+		return pattern;
+	}
+}
@@ -0,0 +1,82 @@
+package fireengine.character.command.action.general.player_action.map_editor;
+
+import java.util.regex.Matcher;
+
+import fireengine.character.Character;
+import fireengine.gameworld.map.RoomPosition;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapEditArea.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Parsing of the box of rooms given to the bulk map editor actions, as "x y TO
+ * x y" for the Character's z level or "x y z TO x y z".
+ *
+ * <p>
+ * Boxes holding more positions than the mapEditMaxRooms setting are refused.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+final class MapEditArea {
+	static final int DEFAULT_MAX_ROOMS = 10000;
+
+	/**
+	 * Pattern text for the box, taking 6 groups.
+	 */
+	static final String AREA_PATTERN = "(-?\\d{1,9}) (-?\\d{1,9})(?: (-?\\d{1,9}))? TO (-?\\d{1,9}) (-?\\d{1,9})(?: (-?\\d{1,9}))?";
+
+	private MapEditArea() {
+	}
+
+	/**
+	 * @param character  Character doing the action, whose z level is used when
+	 *                   none is given
+	 * @param matcher    matcher of a pattern including {@link #AREA_PATTERN}
+	 * @param firstGroup group number of the first x
+	 * @return the two corners of the box
+	 */
+	static RoomPosition[] parseArea(Character character, Matcher matcher, int firstGroup) {
+		int characterZ = character.getRoom().getPosition().getZ();
+		return new RoomPosition[] { parsePosition(matcher, firstGroup, characterZ),
+				parsePosition(matcher, firstGroup + 3, characterZ) };
+	}
+
+	private static RoomPosition parsePosition(Matcher matcher, int group, int defaultZ) {
+		int x = Integer.parseInt(matcher.group(group));
+		int y = Integer.parseInt(matcher.group(group + 1));
+		int z = (matcher.group(group + 2) == null) ? defaultZ : Integer.parseInt(matcher.group(group + 2));
+		return new RoomPosition(x, y, z);
+	}
+
+	/**
+	 * @return error message if the box is too big, otherwise null
+	 */
+	static String checkSize(RoomPosition[] area) {
+		// As a double, as the size of the biggest boxes overflows a long.
+		double size = (Math.abs((double) area[0].getX() - area[1].getX()) + 1)
+				* (Math.abs((double) area[0].getY() - area[1].getY()) + 1)
+				* (Math.abs((double) area[0].getZ() - area[1].getZ()) + 1);
+		int maxRooms = MathUtils.parseInt(ConfigLoader.getSetting("mapEditMaxRooms"), DEFAULT_MAX_ROOMS);
+		if (size > maxRooms) {
+			return String.format("That area holds %.0f rooms, more than the limit of %d.", size, maxRooms);
+		}
+		return null;
+	}
+}
@@ -4,13 +4,23 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
@@ -27,6 +37,8 @@ import org.hibernate.query.Query;
 
 import fireengine.character.Character;
 import fireengine.character.character_class.CharacterClass;
+import fireengine.character.command.action.Action;
+import fireengine.character.command.action.ActionRegistry;
 import fireengine.character.command.action.general.Look;
 import fireengine.character.condition.Condition;
 import fireengine.character.condition.ConditionPlayer;
@@ -36,14 +48,19 @@ import fireengine.character.player.state.StatePlayerInWorld;
 import fireengine.character.skillset.General;
 import fireengine.character.skillset.Skillset;
 import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.GameWorld;
 import fireengine.gameworld.map.Direction;
+import fireengine.gameworld.map.MapRegion;
 import fireengine.gameworld.map.room.Room;
 import fireengine.main.FireEngineMain;
 import fireengine.session.Session;
 import fireengine.util.CheckedHibernateException;
+import fireengine.util.ConfigLoader;
 import fireengine.util.IDSequenceGenerator;
+import fireengine.util.MathUtils;
 import fireengine.util.MyLogger;
 import fireengine.util.StringUtils;
+import fireengine.util.WriteBehindQueue;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -63,10 +80,28 @@ import fireengine.util.StringUtils;
  */
 
 @Entity
-@Table(name = "PLAYER")
-public class Player extends Character {
+@Table(name = "PLAYER", indexes = { @Index(name = "IDX_PLAYER_NAME", columnList = "NAME") })
+public class Player extends Character implements Cloneable, WriteBehindQueue.Copyable {
+	static final int DEFAULT_LOADER_THREADS = 2;
+
+	/**
+	 * Database lookups in progress, by upper case name, so concurrent lookups of a
+	 * name share one.
+	 */
+	@Transient
+	private static final ConcurrentHashMap<String, CompletableFuture<Player>> playerLoads = new ConcurrentHashMap<>();
 	@Transient
-	private static ArrayList<Player> playerList = new ArrayList<>();
+	private static final ExecutorService playerLoader = Executors.newFixedThreadPool(
+			Math.max(1, MathUtils.parseInt(ConfigLoader.getSetting("playerLoaderThreads"), DEFAULT_LOADER_THREADS)),
+			new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "PlayerLoader");
+					// Lookups are not worth waiting for on shutdown.
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 
 	@Id
 	@Column(name = "ID", nullable = false)
@@ -118,13 +153,51 @@ public class Player extends Character {
 	@Transient
 	private final List<Player> listenerList;
 
+	/**
+	 * Whether this player has changes not yet passed to
+	 * {@link #saveCharacter(Player)}, so must be saved if evicted from the
+	 * {@link PlayerCache}.
+	 */
+	@Transient
+	private volatile boolean dirty;
+	/**
+	 * Number of saves of this player queued in the {@link WriteBehindQueue} and
+	 * not yet flushed.
+	 */
+	@Transient
+	private final AtomicInteger queuedWrites = new AtomicInteger();
+
 	// TODO Periodic check for attached session, if not, protect or remove Player.
 
+	/**
+	 * Also used by Hibernate when loading a Player, so must not write to the
+	 * database (such as by taking ids) or do any other unneeded work.
+	 */
 	private Player() {
-		charClass = new CharacterClass(true);
+		charClass = CharacterClass.getPlaceholder();
 		listenerList = new ArrayList<Player>();
 	}
 
+	/**
+	 * Copied holding this Player's lock, so not during one of its commands, with
+	 * its own set of Skillsets.
+	 */
+	@Override
+	public Object copyForWrite(Map<Object, Object> copies) {
+		synchronized (this) {
+			Player copy;
+			try {
+				copy = (Player) super.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("Player: Failed to copy player for writing.", e);
+			}
+			if (skillsetList != null) {
+				copy.skillsetList = new TreeSet<Skillset>(skillsetList);
+			}
+			return copy;
+		}
+	}
+
 	public Player(String name, String password, Room spawnRoom) {
 		this();
 		id = IDSequenceGenerator.getNextID("Player");
@@ -150,6 +223,7 @@ public class Player extends Character {
 	@Override
 	public void setName(String name) {
 		this.name = name;
+		dirty = true;
 	}
 
 	public String getPassword() {
@@ -158,6 +232,7 @@ public class Player extends Character {
 
 	public void setPassword(String password) {
 		this.password = password;
+		dirty = true;
 	}
 
 	public PlayerSetting getSettings() {
@@ -215,10 +290,17 @@ public class Player extends Character {
 	@Override
 	public void setCondition(ConditionPlayer condition) {
 		this.condition = condition;
+		dirty = true;
 	}
 
 	public void setSession(Session session) {
+		if ((this.session != null) && (this.session.getPlayer() == this)) {
+			this.session.setPlayer(null);
+		}
 		this.session = session;
+		if (session != null) {
+			session.setPlayer(this);
+		}
 	}
 
 	public Session getSession() {
@@ -254,7 +336,21 @@ public class Player extends Character {
 				return;
 			}
 
-			lastRoom = room;
+			try {
+				// Rooms holding players are persisted, so lastRoom always refers to a saved Room.
+				room.getMap().materializeRoom(room);
+			} catch (CheckedHibernateException e) {
+				MyLogger.log(Level.SEVERE, "Player: Hibernate exception while trying to materializeRoom.", e);
+			}
+
+			if (!room.getMap().isTransient()) {
+				// Instances kept in memory only are gone after a restart, so keep the last
+				// saved Room to return to.
+				if (lastRoom != room) {
+					lastRoom = room;
+					dirty = true;
+				}
+			}
 
 			if (isInWorld()) {
 				((StatePlayerInWorld) playerState).setRoom(room);
@@ -265,13 +361,43 @@ public class Player extends Character {
 	@Override
 	public void acceptInput(String text) {
 		ClientConnectionOutput actionOutput;
-		synchronized (this) {
-			text = StringUtils.cleanInput(text);
-			actionOutput = playerState.acceptInput(text);
+		// Only this Player's own commands move it, so its region cannot change before
+		// the command runs. Locked before this Player, see MapRegion.
+		Room room = getRoom();
+		MapRegion region = (room == null) ? null : room.getMap().getRegion(room);
+		if (region != null) {
+			MapRegion.acquire(region);
+		}
+		try {
+			synchronized (this) {
+				text = StringUtils.cleanInput(text);
+				actionOutput = playerState.acceptInput(text);
+			}
+		} finally {
+			MapRegion.releaseAll();
 		}
 		sendToListeners(actionOutput);
 	}
 
+	/**
+	 * Returns the {@link Action.PRIORITY} of the {@link Action} the text would run,
+	 * without running it. Used to schedule input before it is processed.
+	 *
+	 * @param text input text
+	 * @return priority of the matching Action, NORMAL if none match or not in the
+	 *         world
+	 */
+	public Action.PRIORITY getInputPriority(String text) {
+		StatePlayer playerState = this.playerState;
+		if (playerState instanceof StatePlayerInWorld) {
+			Action action = ((StatePlayerInWorld) playerState).findAction(StringUtils.cleanInput(text));
+			if (action != null) {
+				return action.getPriority();
+			}
+		}
+		return Action.PRIORITY.NORMAL;
+	}
+
 	/**
 	 * Debatable this is necessary. Might be required later. Can add in prompt lines
 	 * etc here.
@@ -352,6 +478,42 @@ public class Player extends Character {
 		return listenerList;
 	}
 
+	boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * @return true if a save of this player is queued for write-behind and not yet
+	 *         flushed, including one whose flush failed and will be tried again
+	 */
+	boolean hasQueuedWrites() {
+		return queuedWrites.get() > 0;
+	}
+
+	private void writeFlushed() {
+		queuedWrites.decrementAndGet();
+	}
+
+	/**
+	 * @return whether this player is connected, in the world or listened to, so
+	 *         must stay in the {@link PlayerCache}
+	 */
+	boolean isPinned() {
+		return (session != null) || isInWorld() || !listenerList.isEmpty();
+	}
+
+	/**
+	 * @return rough size in bytes of this player and what it alone holds, for
+	 *         the {@link PlayerCache} size limit
+	 */
+	int estimateBytes() {
+		int bytes = 1024;
+		bytes += 2 * ((name == null) ? 0 : name.length());
+		bytes += 2 * ((password == null) ? 0 : password.length());
+		bytes += 64 * ((skillsetList == null) ? 0 : skillsetList.size());
+		return bytes;
+	}
+
 //	/**
 //	 * Used to connect a {@link Session} to the {@link Player}.
 //	 *
@@ -379,19 +541,23 @@ public class Player extends Character {
 		}
 
 		setSession(sess);
+		// Now pinned; re-adds this player if it was evicted while logging in.
+		addPlayerList(this);
 
 		if (playerState instanceof StatePlayerInWorld) {
 			getRoom().sendToRoomExcluding(
 					new ClientConnectionOutput(String.format("%s's eyes light up and starts moving again.", getName())),
 					this);
 		} else {
+			lastRoom = GameWorld.resolveRoom(lastRoom);
 			playerState = new StatePlayerInWorld(this, lastRoom);
+			lastRoom.addCharacter(this);
 			getRoom().sendToRoomExcluding(new ClientConnectionOutput(String.format(
 					"%s arrives from without following a divine herald, who gives a curt nod and shoots off to some other task.",
 					getName())), this);
 		}
 
-		sendToListeners(new Look().doAction(this, (Direction.DIRECTION) null));
+		sendToListeners(ActionRegistry.get(Look.class).doAction(this, (Direction.DIRECTION) null));
 	}
 
 	/**
@@ -415,6 +581,7 @@ public class Player extends Character {
 	@Override
 	public void setLevel(int level) {
 		condition.setLevelNumber(level);
+		dirty = true;
 	}
 
 	public int getExperience() {
@@ -423,6 +590,7 @@ public class Player extends Character {
 
 	public void setExperience(int experience) {
 		condition.setExperience(experience);
+		dirty = true;
 	}
 
 	@Override
@@ -445,86 +613,140 @@ public class Player extends Character {
 		return condition.getMaxMana();
 	}
 
+	/**
+	 * Finds the {@link Player} of the given name (case insensitive), from the
+	 * {@link PlayerCache} or else the database. Waits for the database lookup, but
+	 * holds no lock while it runs; see {@link #findCharacterAsync(String)}.
+	 *
+	 * @param name player name
+	 * @return player, or null if there is none of that name
+	 */
 	public static Player findCharacter(String name) {
-		synchronized (playerList) {
-			name = StringUtils.capitalise(name);
+		Player loadedPlayer = PlayerCache.get(nameKey(name));
+		if (loadedPlayer != null) {
+			return loadedPlayer;
+		}
+		return loadCharacterAsync(nameKey(name), name).join();
+	}
 
-			for (Player foundPlayer : playerList) {
-				if (foundPlayer.getName().equals(name)) {
-					return foundPlayer;
+	/**
+	 * Finds the {@link Player} of the given name (case insensitive). Cached players
+	 * are returned straight away from the {@link PlayerCache}; otherwise the player is
+	 * loaded from the database on a loader thread. Concurrent lookups of the same
+	 * name share the one database query.
+	 *
+	 * @param name player name
+	 * @return future completing with the player, or null if there is none of that
+	 *         name or the lookup failed
+	 */
+	public static CompletableFuture<Player> findCharacterAsync(String name) {
+		String key = nameKey(name);
+		Player loadedPlayer = PlayerCache.get(key);
+		if (loadedPlayer != null) {
+			return CompletableFuture.completedFuture(loadedPlayer);
+		}
+		return loadCharacterAsync(key, name);
+	}
+
+	private static CompletableFuture<Player> loadCharacterAsync(String key, String name) {
+		CompletableFuture<Player> newLoad = new CompletableFuture<>();
+		CompletableFuture<Player> load = playerLoads.putIfAbsent(key, newLoad);
+		if (load != null) {
+			return load;
+		}
+
+		try {
+			playerLoader.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						newLoad.complete(loadCharacter(key, StringUtils.capitalise(name)));
+					} catch (RuntimeException e) {
+						MyLogger.log(Level.WARNING, "Player: Exception while trying to findCharacter.", e);
+						newLoad.complete(null);
+					} finally {
+						playerLoads.remove(key, newLoad);
+					}
 				}
-			}
+			});
+		} catch (RejectedExecutionException e) {
+			playerLoads.remove(key, newLoad);
+			newLoad.complete(null);
+		}
+		return newLoad;
+	}
 
-			org.hibernate.Session hibSess = FireEngineMain.hibSessFactory.openSession();
-			Transaction tx = null;
-			Player loadedPlayer = null;
+	/**
+	 * Loads the {@link Player} from the database and adds it to the cache,
+	 * unless another copy was added meanwhile, in which case that is returned.
+	 */
+	private static Player loadCharacter(String key, String name) {
+		// Added since the lookup started, as by createCharacter.
+		Player loadedPlayer = PlayerCache.peek(key);
+		if (loadedPlayer != null) {
+			return loadedPlayer;
+		}
 
-			try {
-				tx = hibSess.beginTransaction();
+		org.hibernate.Session hibSess = FireEngineMain.hibSessFactory.openSession();
+		Transaction tx = null;
 
-				Query<?> query = hibSess.createQuery("FROM Player WHERE NAME = :name");
-				query.setParameter("name", name);
+		try {
+			tx = hibSess.beginTransaction();
 
-				List<?> players = query.list();
-				tx.commit();
+			Query<?> query = hibSess.createQuery("FROM Player WHERE NAME = :name");
+			query.setParameter("name", name);
 
-				if (players.isEmpty()) {
-					return null;
-				} else {
-					if (players.size() > 1) {
-						MyLogger.log(Level.WARNING, "Player: Multiple DB results for player name.");
-					}
-					loadedPlayer = (Player) players.get(0);
-					addPlayerList(loadedPlayer);
+			List<?> players = query.list();
+			tx.commit();
 
-					return loadedPlayer;
+			if (players.isEmpty()) {
+				return null;
+			} else {
+				if (players.size() > 1) {
+					MyLogger.log(Level.WARNING, "Player: Multiple DB results for player name.");
 				}
+				loadedPlayer = (Player) players.get(0);
+				Player existing = PlayerCache.putIfAbsent(key, loadedPlayer);
+				return (existing != null) ? existing : loadedPlayer;
+			}
 
-			} catch (HibernateException e) {
-				if (tx != null) {
-					tx.rollback();
-				}
-				MyLogger.log(Level.WARNING, "Player: Hibernate error while trying to findCharacter.", e);
-				return null;
-			} finally {
-				hibSess.close();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
 			}
+			MyLogger.log(Level.WARNING, "Player: Hibernate error while trying to findCharacter.", e);
+			return null;
+		} finally {
+			hibSess.close();
 		}
 	}
 
+	private static String nameKey(String name) {
+		return name.toUpperCase(Locale.ROOT);
+	}
+
 	public static void addPlayerList(Player player) {
-		synchronized (playerList) {
-			for (Player listPlayer : playerList) {
-				if (listPlayer.equals(player)) {
-					return;
-				}
-			}
-			playerList.add(player);
+		Player existing = PlayerCache.putIfAbsent(nameKey(player.getName()), player);
+		if ((existing != null) && (existing != player)) {
+			MyLogger.log(Level.WARNING,
+					String.format("Player: Another copy of %s is already loaded, not adding it.", player.getName()));
 		}
 	}
 
 	public static void removePlayerList(Player player) {
-		synchronized (playerList) {
-			for (Player listPlayer : playerList) {
-				if (listPlayer.equals(player)) {
-					playerList.remove(listPlayer);
-					return;
-				}
-			}
-		}
+		PlayerCache.remove(nameKey(player.getName()), player);
 	}
 
-	public static ArrayList<Player> getPlayerList() {
-		synchronized (playerList) {
-			return playerList;
-		}
+	/**
+	 * @return new list of the loaded players
+	 */
+	public static List<Player> getPlayerList() {
+		return PlayerCache.getPlayers();
 	}
 
 	public static void sendToAllPlayers(ClientConnectionOutput output) {
-		synchronized (playerList) {
-			for (Player player : playerList) {
-				player.sendToListeners(output);
-			}
+		for (Player player : PlayerCache.getPlayers()) {
+			player.sendToListeners(output);
 		}
 	}
 
@@ -544,10 +766,26 @@ public class Player extends Character {
 		Player newPlayer = new Player(name, password, spawnRoom);
 
 		saveCharacter(newPlayer);
+		addPlayerList(newPlayer);
 		return Player.findCharacter(name);
 	}
 
+	/**
+	 * Persists the {@link Player}, with the next {@link WriteBehindQueue} flush if
+	 * write-behind is enabled, otherwise straight away.
+	 *
+	 * @param player player to save
+	 * @throws CheckedHibernateException hibernate exception
+	 */
 	public static void saveCharacter(Player player) throws CheckedHibernateException {
+		if (WriteBehindQueue.isEnabled()) {
+			player.queuedWrites.incrementAndGet();
+			WriteBehindQueue.markDirty(player);
+			WriteBehindQueue.afterFlush(player::writeFlushed);
+			player.dirty = false;
+			return;
+		}
+
 		org.hibernate.Session hibSess = null;
 		Transaction tx = null;
 
@@ -558,6 +796,7 @@ public class Player extends Character {
 			hibSess.saveOrUpdate(player);
 
 			tx.commit();
+			player.dirty = false;
 		} catch (HibernateException e) {
 			if (tx != null) {
 				tx.rollback();
@@ -571,14 +810,12 @@ public class Player extends Character {
 	}
 
 	public static void saveAllCharacters() {
-		synchronized (playerList) {
-			for (Player player : playerList) {
-				try {
-					saveCharacter(player);
-				} catch (CheckedHibernateException e) {
-					MyLogger.log(Level.SEVERE, String.format(
-							"Player: Hibernate exception while trying to saveCharater on %s.", player.getName()), e);
-				}
+		for (Player player : PlayerCache.getPlayers()) {
+			try {
+				saveCharacter(player);
+			} catch (CheckedHibernateException e) {
+				MyLogger.log(Level.SEVERE, String.format(
+						"Player: Hibernate exception while trying to saveCharater on %s.", player.getName()), e);
 			}
 		}
 	}
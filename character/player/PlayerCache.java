@@ -0,0 +1,343 @@
+package fireengine.character.player;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.util.CheckedHibernateException;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+import fireengine.util.MyLogger;
+import fireengine.util.WriteBehindQueue;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    PlayerCache.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Loaded {@link Player}s by name, read through by {@link Player#findCharacter}.
+ *
+ * <p>
+ * Players that are connected, in the world or being watched are pinned and
+ * never evicted. Other (offline) players, such as those looked up by name, are
+ * evicted least recently used first once there are more than the
+ * playerCacheMaxProfiles setting or their estimated size is over the
+ * playerCacheMaxKB setting, and a timer evicts any not used for the
+ * playerCacheIdleSeconds setting. Players with unsaved changes are saved as
+ * they are evicted, and with write-behind are only evicted once that save is
+ * flushed.
+ * </p>
+ *
+ * <p>
+ * Settings (server config file, all optional): playerCacheMaxProfiles,
+ * playerCacheMaxKB and playerCacheIdleSeconds.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class PlayerCache {
+	static final int DEFAULT_MAX_PROFILES = 1000;
+	static final int DEFAULT_MAX_KB = 4096;
+	static final int DEFAULT_IDLE_SECONDS = 1800;
+
+	private static final long EVICT_INTERVAL_SECONDS = 60;
+	/**
+	 * Players used more recently than this are not evicted to meet the limits, as
+	 * they may be about to log in.
+	 */
+	private static final long MIN_IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+	private static int maxProfiles = DEFAULT_MAX_PROFILES;
+	private static long maxBytes = DEFAULT_MAX_KB * 1024L;
+	private static long idleNanos = TimeUnit.SECONDS.toNanos(DEFAULT_IDLE_SECONDS);
+
+	/**
+	 * A cached Player and when it was last used.
+	 */
+	private static final class CacheEntry {
+		final Player player;
+		volatile long lastUsed;
+
+		CacheEntry(Player player) {
+			this.player = player;
+			lastUsed = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Cached Players by upper case name.
+	 */
+	private static final ConcurrentHashMap<String, CacheEntry> entries = new ConcurrentHashMap<>();
+
+	private static final AtomicBoolean evictionQueued = new AtomicBoolean();
+	private static ScheduledExecutorService evictionTimer;
+
+	private static final AtomicLong hits = new AtomicLong();
+	private static final AtomicLong misses = new AtomicLong();
+	private static final AtomicLong evictions = new AtomicLong();
+	private static final AtomicLong writeBacks = new AtomicLong();
+
+	private PlayerCache() {
+	}
+
+	/**
+	 * Loads player cache settings and starts the eviction timer.
+	 */
+	public static void setupPlayerCache() {
+		maxProfiles = Math.max(0,
+				MathUtils.parseInt(ConfigLoader.getSetting("playerCacheMaxProfiles"), DEFAULT_MAX_PROFILES));
+		maxBytes = Math.max(0, MathUtils.parseInt(ConfigLoader.getSetting("playerCacheMaxKB"), DEFAULT_MAX_KB))
+				* 1024L;
+		idleNanos = TimeUnit.SECONDS.toNanos(Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("playerCacheIdleSeconds"), DEFAULT_IDLE_SECONDS)));
+
+		evictionTimer = Executors.newSingleThreadScheduledExecutor();
+		evictionTimer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictPlayers();
+			}
+		}, EVICT_INTERVAL_SECONDS, EVICT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+
+		MyLogger.log(Level.INFO,
+				String.format(
+						"PlayerCache: Keeping at most %d offline player(s) in %dKB, evicting after %ds idle.",
+						maxProfiles, maxBytes / 1024, TimeUnit.NANOSECONDS.toSeconds(idleNanos)));
+	}
+
+	/**
+	 * Stops the eviction timer, typically on application shutdown.
+	 */
+	public static void shutdownPlayerCache() {
+		if (evictionTimer != null) {
+			evictionTimer.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param key upper case name
+	 * @return cached Player, or null, counted as a hit or miss
+	 */
+	static Player get(String key) {
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		entry.lastUsed = System.nanoTime();
+		return entry.player;
+	}
+
+	/**
+	 * @param key upper case name
+	 * @return cached Player, or null, without counting it
+	 */
+	static Player peek(String key) {
+		CacheEntry entry = entries.get(key);
+		return (entry == null) ? null : entry.player;
+	}
+
+	/**
+	 * Caches the Player, unless one is already cached under the name.
+	 *
+	 * @param key    upper case name
+	 * @param player Player to cache
+	 * @return Player already cached, or null if the given one was added
+	 */
+	static Player putIfAbsent(String key, Player player) {
+		CacheEntry existing = entries.putIfAbsent(key, new CacheEntry(player));
+		if (existing != null) {
+			return existing.player;
+		}
+		if ((maxProfiles > 0) && (entries.size() > maxProfiles)) {
+			queueEviction();
+		}
+		return null;
+	}
+
+	static void remove(String key, Player player) {
+		CacheEntry entry = entries.get(key);
+		if ((entry != null) && (entry.player == player)) {
+			entries.remove(key, entry);
+		}
+	}
+
+	/**
+	 * @return new list of the cached Players
+	 */
+	static List<Player> getPlayers() {
+		List<Player> players = new ArrayList<>(entries.size());
+		for (CacheEntry entry : entries.values()) {
+			players.add(entry.player);
+		}
+		return players;
+	}
+
+	private static void queueEviction() {
+		ScheduledExecutorService timer = evictionTimer;
+		if ((timer != null) && evictionQueued.compareAndSet(false, true)) {
+			try {
+				timer.execute(new Runnable() {
+					@Override
+					public void run() {
+						evictionQueued.set(false);
+						evictPlayers();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Shutting down.
+				evictionQueued.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Evicts idle offline Players, least recently used first, and then further
+	 * offline Players while over the count or size limit.
+	 */
+	static void evictPlayers() {
+		try {
+			List<Map.Entry<String, CacheEntry>> candidates = new ArrayList<>();
+			int offline = 0;
+			long offlineBytes = 0;
+			for (Map.Entry<String, CacheEntry> mapEntry : entries.entrySet()) {
+				Player player = mapEntry.getValue().player;
+				if (!player.isPinned()) {
+					candidates.add(mapEntry);
+					offline++;
+					offlineBytes += player.estimateBytes();
+				}
+			}
+			candidates.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().lastUsed));
+
+			long now = System.nanoTime();
+			int evicted = 0;
+			for (Map.Entry<String, CacheEntry> mapEntry : candidates) {
+				CacheEntry entry = mapEntry.getValue();
+				long idle = now - entry.lastUsed;
+				boolean overLimit = ((maxProfiles > 0) && (offline > maxProfiles))
+						|| ((maxBytes > 0) && (offlineBytes > maxBytes));
+				if ((idle < idleNanos) && (!overLimit || (idle < MIN_IDLE_NANOS))) {
+					// The rest were used more recently still.
+					break;
+				}
+
+				if (evict(mapEntry.getKey(), entry)) {
+					evicted++;
+					offline--;
+					offlineBytes -= entry.player.estimateBytes();
+				}
+			}
+
+			if (evicted > 0) {
+				MyLogger.log(Level.FINE, String.format("PlayerCache: Evicted %d player(s), %d cached.", evicted,
+						entries.size()));
+			}
+		} catch (RuntimeException e) {
+			// Keep the timer running.
+			MyLogger.log(Level.SEVERE, "PlayerCache: Exception while evicting players.", e);
+		}
+	}
+
+	/**
+	 * Removes the entry if it is still unpinned and unused since the eviction run
+	 * looked at it, saving the Player first if it has unsaved changes. Not removed
+	 * while a queued save of the Player is not yet flushed, so a lookup meanwhile
+	 * cannot load the old row.
+	 */
+	private static boolean evict(String key, CacheEntry entry) {
+		long lastUsed = entry.lastUsed;
+		if (entry.player.isDirty()) {
+			try {
+				Player.saveCharacter(entry.player);
+				writeBacks.incrementAndGet();
+				if (WriteBehindQueue.isEnabled()) {
+					// Only queued; evicted on a later run once flushed.
+					return false;
+				}
+			} catch (CheckedHibernateException e) {
+				MyLogger.log(Level.SEVERE, String.format(
+						"PlayerCache: Hibernate exception while trying to save evicted player %s, keeping it cached.",
+						entry.player.getName()), e);
+				return false;
+			}
+		}
+
+		if (entry.player.hasQueuedWrites()) {
+			// Not flushed yet, or the flush failed and will be tried again.
+			return false;
+		}
+
+		boolean[] removed = new boolean[1];
+		entries.computeIfPresent(key, (k, current) -> {
+			if ((current == entry) && (entry.lastUsed == lastUsed) && !entry.player.isPinned()
+					&& !entry.player.isDirty() && !entry.player.hasQueuedWrites()) {
+				removed[0] = true;
+				return null;
+			}
+			return current;
+		});
+		if (removed[0]) {
+			evictions.incrementAndGet();
+		}
+		return removed[0];
+	}
+
+	/**
+	 * Returns player cache metrics for display to Admins: cached and pinned
+	 * Players, estimated size, hits, misses, evictions and write backs.
+	 *
+	 * @return {@link ClientConnectionOutput} of player cache metrics
+	 */
+	public static ClientConnectionOutput getPlayerCacheInfo() {
+		int pinned = 0;
+		long bytes = 0;
+		for (CacheEntry entry : entries.values()) {
+			if (entry.player.isPinned()) {
+				pinned++;
+			} else {
+				bytes += entry.player.estimateBytes();
+			}
+		}
+		long hitCount = hits.get();
+		long lookups = hitCount + misses.get();
+
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		output.addPart(String.format("Player cache (at most %d offline player(s) in %dKB, %ds idle):", maxProfiles,
+				maxBytes / 1024, TimeUnit.NANOSECONDS.toSeconds(idleNanos)), null, null);
+		output.newLine();
+		output.addPart(String.format("  Cached: %d, %d pinned, offline about %dKB.", entries.size(), pinned,
+				bytes / 1024), null, null);
+		output.newLine();
+		output.addPart(String.format("  Lookups: %d hit(s), %d miss(es), %.1f%% hit rate.", hitCount, misses.get(),
+				(lookups == 0) ? 0.0 : ((hitCount * 100.0) / lookups)), null, null);
+		output.newLine();
+		output.addPart(String.format("  Evictions: %d, %d written back.", evictions.get(), writeBacks.get()), null,
+				null);
+		return output;
+	}
+}
@@ -1,17 +1,12 @@
 package fireengine.character.player.state;
 
-import java.util.logging.Level;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 import fireengine.character.Character;
-import fireengine.character.command.exception.CommandExceptionNoPattern;
+import fireengine.character.command.action.Action;
 import fireengine.character.skillset.Skillset;
-import fireengine.character.skillset.Skillset.SkillsetCategory;
+import fireengine.character.skillset.SkillsetMatcher;
 import fireengine.character.skillset.exception.SkillsetExceptionLackExperience;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.room.Room;
-import fireengine.util.MyLogger;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -51,9 +46,7 @@ public class StatePlayerInWorld implements StatePlayer {
 			Room oldRoom = this.room;
 			this.room = room;
 
-			oldRoom.removeCharacter(character);
-
-			this.room.addCharacter(character);
+			Room.moveCharacter(character, oldRoom, room);
 		}
 	}
 
@@ -70,6 +63,22 @@ public class StatePlayerInWorld implements StatePlayer {
 		return new ClientConnectionOutput("I don't know what you mean.");
 	}
 
+	/**
+	 * Finds the {@link Action} the text would run, without running it.
+	 *
+	 * @param text cleaned input text
+	 * @return first matching Action, or null if none match
+	 */
+	public Action findAction(String text) {
+		for (Skillset skillset : character.getSkillsetList()) {
+			SkillsetMatcher.ActionMatch match = skillset.matchAction(text);
+			if (match != null) {
+				return match.getActionEntry().getAction();
+			}
+		}
+		return null;
+	}
+
 	/**
 	 * Checks the text against the Patterns for each skill in a Skillset.
 	 * 
@@ -79,27 +88,17 @@ public class StatePlayerInWorld implements StatePlayer {
 	 * @throws SkillsetExceptionLackExperience
 	 */
 	private ClientConnectionOutput matchSkillsetAction(String text, Skillset skillset) {
-		Matcher matcher;
-		Pattern pattern;
-		ClientConnectionOutput output;
-		for (SkillsetCategory.ActionEntry actionEntry : skillset.getSkillEntries()) {
-			try {
-				pattern = actionEntry.getAction().getPattern();
-				matcher = pattern.matcher(text);
-				if (matcher.matches()) {
-					output = new ClientConnectionOutput();
-					try {
-						output.addOutput(actionEntry.doAction(character, matcher));
-					} catch (SkillsetExceptionLackExperience e) {
-						output.addPart("You have not yet learned this skill.", null, null);
-					}
-					return output;
-				}
-			} catch (CommandExceptionNoPattern e) {
-				MyLogger.log(Level.SEVERE, String.format("StatePlayerInWorld: Action '%s' does not have pattern set.",
-						actionEntry.getAction().getClass().getName()));
-			}
+		SkillsetMatcher.ActionMatch match = skillset.matchAction(text);
+		if (match == null) {
+			return null;
 		}
-		return null;
+
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		try {
+			output.addOutput(match.getActionEntry().doAction(skillset, character, match.getMatcher()));
+		} catch (SkillsetExceptionLackExperience e) {
+			output.addPart("You have not yet learned this skill.", null, null);
+		}
+		return output;
 	}
 }
@@ -7,14 +7,22 @@ import javax.persistence.PrimaryKeyJoinColumn;
 import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
+import fireengine.character.command.action.ActionRegistry;
 import fireengine.character.command.action.general.*;
 import fireengine.character.command.action.general.player_action.QuitGame;
+import fireengine.character.command.action.general.player_action.admin.PersistenceInfo;
+import fireengine.character.command.action.general.player_action.admin.PlayerCacheInfo;
+import fireengine.character.command.action.general.player_action.admin.Profile;
+import fireengine.character.command.action.general.player_action.admin.SchedulerInfo;
 import fireengine.character.command.action.general.player_action.admin.Shutdown;
 import fireengine.character.command.action.general.player_action.admin.Watch;
 import fireengine.character.command.action.general.player_action.map_editor.CreateExit;
 import fireengine.character.command.action.general.player_action.map_editor.CreateRoom;
 import fireengine.character.command.action.general.player_action.map_editor.DestroyExit;
 import fireengine.character.command.action.general.player_action.map_editor.DestroyRoom;
+import fireengine.character.command.action.general.player_action.map_editor.DestroyRooms;
+import fireengine.character.command.action.general.player_action.map_editor.FillRooms;
+import fireengine.character.command.action.general.player_action.map_editor.LinkRooms;
 import fireengine.gameworld.map.room.Room;
 import fireengine.util.IDSequenceGenerator;
 
@@ -46,34 +54,10 @@ public class General extends Skillset {
 
 	private static String name = "General";
 
+	private static final SkillsetTable skillsetTable = createSkillsetTable();
+
 	@SuppressWarnings("unused")
 	private General() {
-		SkillsetCategory movementCategory = new SkillsetCategory("Movement");
-		movementCategory.addSkillEntry(0, new Move());
-		movementCategory.addSkillEntry(0, new Map());
-		addCategory(movementCategory);
-
-		SkillsetCategory otherCategory = new SkillsetCategory("Other");
-		otherCategory.addSkillEntry(0, new Look());
-		otherCategory.addSkillEntry(0, new Say());
-		otherCategory.addSkillEntry(0, new Who());
-		addCategory(otherCategory);
-
-		SkillsetCategory playerCategory = new SkillsetCategory("Player only");
-		playerCategory.addSkillEntry(0, new QuitGame());
-		addCategory(playerCategory);
-
-		SkillsetCategory mapEditorCategory = new SkillsetCategory("Map Editor only");
-		mapEditorCategory.addSkillEntry(0, new CreateExit());
-		mapEditorCategory.addSkillEntry(0, new CreateRoom());
-		mapEditorCategory.addSkillEntry(0, new DestroyExit());
-		mapEditorCategory.addSkillEntry(0, new DestroyRoom());
-		addCategory(mapEditorCategory);
-
-		SkillsetCategory adminCategory = new SkillsetCategory("Admin only");
-		adminCategory.addSkillEntry(0, new Watch());
-		adminCategory.addSkillEntry(0, new Shutdown());
-		addCategory(adminCategory);
 	}
 
 	public General(Boolean bool) {
@@ -86,6 +70,46 @@ public class General extends Skillset {
 		return name;
 	}
 
+	@Override
+	protected SkillsetTable getSkillsetTable() {
+		return skillsetTable;
+	}
+
+	private static SkillsetTable createSkillsetTable() {
+		SkillsetCategory movementCategory = new SkillsetCategory("Movement");
+		movementCategory.addSkillEntry(0, ActionRegistry.get(Move.class));
+		movementCategory.addSkillEntry(0, ActionRegistry.get(Map.class));
+		movementCategory.addSkillEntry(0, ActionRegistry.get(Speedwalk.class));
+		movementCategory.addSkillEntry(0, ActionRegistry.get(Travel.class));
+
+		SkillsetCategory otherCategory = new SkillsetCategory("Other");
+		otherCategory.addSkillEntry(0, ActionRegistry.get(Look.class));
+		otherCategory.addSkillEntry(0, ActionRegistry.get(Say.class));
+		otherCategory.addSkillEntry(0, ActionRegistry.get(Who.class));
+
+		SkillsetCategory playerCategory = new SkillsetCategory("Player only");
+		playerCategory.addSkillEntry(0, ActionRegistry.get(QuitGame.class));
+
+		SkillsetCategory mapEditorCategory = new SkillsetCategory("Map Editor only");
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(CreateExit.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(CreateRoom.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(DestroyExit.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(DestroyRoom.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(FillRooms.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(LinkRooms.class));
+		mapEditorCategory.addSkillEntry(0, ActionRegistry.get(DestroyRooms.class));
+
+		SkillsetCategory adminCategory = new SkillsetCategory("Admin only");
+		adminCategory.addSkillEntry(0, ActionRegistry.get(Watch.class));
+		adminCategory.addSkillEntry(0, ActionRegistry.get(Shutdown.class));
+		adminCategory.addSkillEntry(0, ActionRegistry.get(SchedulerInfo.class));
+		adminCategory.addSkillEntry(0, ActionRegistry.get(PersistenceInfo.class));
+		adminCategory.addSkillEntry(0, ActionRegistry.get(PlayerCacheInfo.class));
+		adminCategory.addSkillEntry(0, ActionRegistry.get(Profile.class));
+
+		return new SkillsetTable(movementCategory, otherCategory, playerCategory, mapEditorCategory, adminCategory);
+	}
+
 	/**
 	 * Custom implementation requires for proper JPA/Hibernate function.
 	 * 
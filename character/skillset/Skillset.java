@@ -1,6 +1,7 @@
 package fireengine.character.skillset;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.regex.Matcher;
 
@@ -10,7 +11,6 @@ import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
 import javax.persistence.Table;
-import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 
 import fireengine.character.Character;
@@ -55,11 +55,7 @@ public abstract class Skillset implements Comparable<Skillset> {
 	@NotNull
 	private int skillsetExperience;
 
-	@Transient
-	private ArrayList<SkillsetCategory> categoryList;
-
 	protected Skillset() {
-		categoryList = new ArrayList<Skillset.SkillsetCategory>();
 	}
 
 	public Skillset(Boolean bool) {
@@ -96,18 +92,72 @@ public abstract class Skillset implements Comparable<Skillset> {
 		skillsetExperience = experience;
 	}
 
-	public void addCategory(SkillsetCategory category) {
-		categoryList.add(category);
+	/**
+	 * Returns the {@link SkillsetTable} shared by all instances of the Skillset
+	 * subclass. Subclass should build its table once, into a static field.
+	 * 
+	 * @return shared table of categories and Actions for this Skillset
+	 */
+	protected abstract SkillsetTable getSkillsetTable();
+
+	public List<SkillsetCategory> getCategories() {
+		return getSkillsetTable().getCategories();
 	}
 
 	public List<ActionEntry> getSkillEntries() {
-		List<ActionEntry> skillEntrySet = new ArrayList<ActionEntry>();
+		return getSkillsetTable().getSkillEntries();
+	}
+
+	/**
+	 * Finds the first {@link ActionEntry} of this Skillset matching the text.
+	 * 
+	 * @param text cleaned input text
+	 * @return match, or null if no entry matches
+	 */
+	public SkillsetMatcher.ActionMatch matchAction(String text) {
+		return getSkillsetTable().getMatcher().match(text);
+	}
+
+	/**
+	 * Immutable table of {@link SkillsetCategory}s for a Skillset subclass, along
+	 * with the flattened list of all their {@link ActionEntry}s and a
+	 * {@link SkillsetMatcher} for them. Built once per
+	 * Skillset class and shared by every instance, so that a Skillset instance only
+	 * holds its own experience.
+	 * 
+	 * @author Ben Hook
+	 */
+	public static final class SkillsetTable {
+		private final List<SkillsetCategory> categoryList;
+		private final List<ActionEntry> skillEntryList;
+		private final SkillsetMatcher matcher;
 
-		for (SkillsetCategory category : categoryList) {
-			skillEntrySet.addAll(category.getSkillEntries());
+		public SkillsetTable(SkillsetCategory... categories) {
+			List<SkillsetCategory> categoryList = new ArrayList<SkillsetCategory>();
+			List<ActionEntry> skillEntryList = new ArrayList<ActionEntry>();
+
+			for (SkillsetCategory category : categories) {
+				category.seal();
+				categoryList.add(category);
+				skillEntryList.addAll(category.getSkillEntries());
+			}
+
+			this.categoryList = Collections.unmodifiableList(categoryList);
+			this.skillEntryList = Collections.unmodifiableList(skillEntryList);
+			this.matcher = new SkillsetMatcher(this.skillEntryList);
+		}
+
+		public List<SkillsetCategory> getCategories() {
+			return categoryList;
+		}
+
+		public List<ActionEntry> getSkillEntries() {
+			return skillEntryList;
 		}
 
-		return skillEntrySet;
+		public SkillsetMatcher getMatcher() {
+			return matcher;
+		}
 	}
 
 	/**
@@ -115,11 +165,16 @@ public abstract class Skillset implements Comparable<Skillset> {
 	 * for the ability to present actions/skills with grouped headings in the
 	 * Skillset's AB list.
 	 * 
+	 * <p>
+	 * Entries can only be added until the category is placed into a
+	 * {@link SkillsetTable}, after which it is read only.
+	 * </p>
+	 * 
 	 * @author Ben Hook
 	 */
-	public class SkillsetCategory {
+	public static class SkillsetCategory {
 		String name;
-		private ArrayList<ActionEntry> skillList = new ArrayList<ActionEntry>();
+		private List<ActionEntry> skillList = new ArrayList<ActionEntry>();
 
 		public SkillsetCategory(String name) {
 			this.name = name;
@@ -129,18 +184,18 @@ public abstract class Skillset implements Comparable<Skillset> {
 			return name;
 		}
 
-		public class ActionEntry {
-			private int requiredExperience;
-			private Action action;
+		public static class ActionEntry {
+			private final int requiredExperience;
+			private final Action action;
 
 			ActionEntry(int requiredExperience, Action action) {
 				this.requiredExperience = requiredExperience;
 				this.action = action;
 			}
 
-			public ClientConnectionOutput doAction(Character character, Matcher matcher)
+			public ClientConnectionOutput doAction(Skillset skillset, Character character, Matcher matcher)
 					throws SkillsetExceptionLackExperience {
-				if (skillsetExperience < requiredExperience) {
+				if (skillset.getSkillsetExperience() < requiredExperience) {
 					throw new SkillsetExceptionLackExperience(
 							"ActionEntry: Character lacks Skillset experience to use skill/Action.");
 				} else {
@@ -148,6 +203,10 @@ public abstract class Skillset implements Comparable<Skillset> {
 				}
 			}
 
+			public int getRequiredExperience() {
+				return requiredExperience;
+			}
+
 			public Action getAction() {
 				return action;
 			}
@@ -157,9 +216,13 @@ public abstract class Skillset implements Comparable<Skillset> {
 			skillList.add(new ActionEntry(requiredExperience, action));
 		}
 
-		public ArrayList<ActionEntry> getSkillEntries() {
+		public List<ActionEntry> getSkillEntries() {
 			return skillList;
 		}
+
+		private void seal() {
+			skillList = Collections.unmodifiableList(skillList);
+		}
 	}
 
 	/**
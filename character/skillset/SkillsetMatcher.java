@@ -0,0 +1,289 @@
+package fireengine.character.skillset;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import fireengine.character.command.exception.CommandExceptionNoPattern;
+import fireengine.character.skillset.Skillset.SkillsetCategory.ActionEntry;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    SkillsetMatcher.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Matches input text against all the {@link ActionEntry}s of a
+ * {@link Skillset.SkillsetTable} in one pass.
+ *
+ * <p>
+ * Entries are first narrowed down by the first character of the input: each
+ * Action's Pattern is probed with every ASCII character, and any Pattern that
+ * fails without reaching the end of the probe can never match input starting
+ * with that character. The Patterns of the remaining entries are joined as
+ * groups of a single alternation, compiled once per distinct set of entries.
+ * </p>
+ *
+ * <p>
+ * Alternatives are tried in entry order and the whole input must match, so the
+ * first entry whose own Pattern matches is chosen, the same as trying each
+ * Pattern in turn. Only the chosen Action's Pattern is then run again, to give
+ * it a {@link Matcher} with its own capture groups.
+ * </p>
+ *
+ * <p>
+ * If the Patterns cannot be joined (differing flags, back references, or an
+ * Action without a Pattern) each Pattern is tried in turn instead. Setting
+ * validateCommandMatcher in the server config checks every match against
+ * trying each Pattern in turn, logging any difference.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public final class SkillsetMatcher {
+	private static final int ASCII_SIZE = 128;
+
+	private final List<ActionEntry> entryList;
+	/**
+	 * Branch to use for input starting with each ASCII character.
+	 */
+	private final Branch[] asciiBranches = new Branch[ASCII_SIZE];
+	/**
+	 * Branch of all entries, for empty input or input not starting with ASCII.
+	 */
+	private final Branch allBranch;
+	private final boolean joinable;
+	private final boolean validate;
+
+	/**
+	 * An {@link ActionEntry} matched by input text, and the Matcher of its Action's
+	 * own Pattern for the text.
+	 */
+	public static final class ActionMatch {
+		private final ActionEntry actionEntry;
+		private final Matcher matcher;
+
+		ActionMatch(ActionEntry actionEntry, Matcher matcher) {
+			this.actionEntry = actionEntry;
+			this.matcher = matcher;
+		}
+
+		public ActionEntry getActionEntry() {
+			return actionEntry;
+		}
+
+		public Matcher getMatcher() {
+			return matcher;
+		}
+	}
+
+	/**
+	 * Entries that may match input starting with a certain character, in entry
+	 * order, and their joined Pattern.
+	 */
+	private final class Branch {
+		final ActionEntry[] entries;
+		/**
+		 * Joined Pattern, or null if there are less than two entries or matching each
+		 * in turn.
+		 */
+		final Pattern joinedPattern;
+		/**
+		 * Group number in the joined Pattern wrapping each entry's Pattern.
+		 */
+		final int[] entryGroups;
+
+		Branch(List<ActionEntry> entries) {
+			this.entries = entries.toArray(new ActionEntry[entries.size()]);
+			this.entryGroups = new int[this.entries.length];
+			this.joinedPattern = (joinable && (this.entries.length > 1)) ? joinPatterns() : null;
+		}
+
+		private Pattern joinPatterns() {
+			StringBuilder joined = new StringBuilder();
+			int group = 1;
+
+			for (int i = 0; i < entries.length; i++) {
+				Pattern pattern = getPattern(entries[i]);
+				if (i > 0) {
+					joined.append('|');
+				}
+				joined.append('(').append(pattern.pattern()).append(')');
+				entryGroups[i] = group;
+				group += 1 + pattern.matcher("").groupCount();
+			}
+
+			try {
+				return Pattern.compile(joined.toString(), getPattern(entries[0]).flags());
+			} catch (PatternSyntaxException e) {
+				MyLogger.log(Level.WARNING, "SkillsetMatcher: Could not join Action Patterns, matching each in turn.",
+						e);
+				return null;
+			}
+		}
+
+		ActionMatch match(String text) {
+			if (joinedPattern == null) {
+				for (ActionEntry actionEntry : entries) {
+					ActionMatch match = matchEntry(actionEntry, text);
+					if (match != null) {
+						return match;
+					}
+				}
+				return null;
+			}
+
+			Matcher joinedMatcher = joinedPattern.matcher(text);
+			if (joinedMatcher.matches()) {
+				for (int i = 0; i < entryGroups.length; i++) {
+					if (joinedMatcher.start(entryGroups[i]) != -1) {
+						return matchEntry(entries[i], text);
+					}
+				}
+			}
+			return null;
+		}
+	}
+
+	SkillsetMatcher(List<ActionEntry> entryList) {
+		this.entryList = entryList;
+		this.joinable = checkJoinable();
+		this.allBranch = new Branch(entryList);
+		this.validate = Boolean.parseBoolean(ConfigLoader.getSetting("validateCommandMatcher"));
+
+		if (!joinable) {
+			for (int c = 0; c < ASCII_SIZE; c++) {
+				asciiBranches[c] = allBranch;
+			}
+			return;
+		}
+
+		HashMap<List<ActionEntry>, Branch> branchMap = new HashMap<>();
+		for (int c = 0; c < ASCII_SIZE; c++) {
+			String probe = String.valueOf((char) c);
+			List<ActionEntry> candidates = new ArrayList<>();
+			for (ActionEntry actionEntry : entryList) {
+				Matcher matcher = getPattern(actionEntry).matcher(probe);
+				// If the match failed without reaching the end of the probe, no longer input
+				// starting with the same character can match either.
+				if (matcher.matches() || matcher.hitEnd()) {
+					candidates.add(actionEntry);
+				}
+			}
+			asciiBranches[c] = branchMap.computeIfAbsent(candidates, k -> new Branch(k));
+		}
+	}
+
+	/**
+	 * @return true if every entry's Pattern can be joined with the others
+	 */
+	private boolean checkJoinable() {
+		int flags = -1;
+
+		for (ActionEntry actionEntry : entryList) {
+			Pattern pattern;
+			try {
+				pattern = actionEntry.getAction().getPattern();
+			} catch (CommandExceptionNoPattern e) {
+				MyLogger.log(Level.SEVERE, String.format("SkillsetMatcher: Action '%s' does not have pattern set.",
+						actionEntry.getAction().getClass().getName()));
+				return false;
+			}
+
+			if (flags == -1) {
+				flags = pattern.flags();
+			} else if (flags != pattern.flags()) {
+				return false;
+			}
+			// Back references would point at the wrong group once joined.
+			if (pattern.pattern().matches("(?s).*\\\\(?:[1-9]|k<).*")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the first {@link ActionEntry} whose Action's Pattern matches the whole
+	 * text.
+	 *
+	 * @param text cleaned input text
+	 * @return match, or null if no entry matches
+	 */
+	public ActionMatch match(String text) {
+		Branch branch = allBranch;
+		if (!text.isEmpty() && (text.charAt(0) < ASCII_SIZE)) {
+			branch = asciiBranches[text.charAt(0)];
+		}
+		ActionMatch match = branch.match(text);
+
+		if (validate) {
+			ActionMatch expected = matchEachInTurn(text);
+			ActionEntry expectedEntry = (expected == null) ? null : expected.getActionEntry();
+			ActionEntry actualEntry = (match == null) ? null : match.getActionEntry();
+			if (expectedEntry != actualEntry) {
+				MyLogger.log(Level.SEVERE,
+						String.format("SkillsetMatcher: Joined Pattern matched '%s' to %s but expected %s.", text,
+								describe(actualEntry), describe(expectedEntry)));
+				return expected;
+			}
+		}
+		return match;
+	}
+
+	private ActionMatch matchEachInTurn(String text) {
+		for (ActionEntry actionEntry : entryList) {
+			ActionMatch match = matchEntry(actionEntry, text);
+			if (match != null) {
+				return match;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Only used once Patterns are known to be set.
+	 */
+	private static Pattern getPattern(ActionEntry actionEntry) {
+		try {
+			return actionEntry.getAction().getPattern();
+		} catch (CommandExceptionNoPattern e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static ActionMatch matchEntry(ActionEntry actionEntry, String text) {
+		try {
+			Matcher matcher = actionEntry.getAction().getPattern().matcher(text);
+			if (matcher.matches()) {
+				return new ActionMatch(actionEntry, matcher);
+			}
+		} catch (CommandExceptionNoPattern e) {
+			MyLogger.log(Level.SEVERE, String.format("SkillsetMatcher: Action '%s' does not have pattern set.",
+					actionEntry.getAction().getClass().getName()));
+		}
+		return null;
+	}
+
+	private static String describe(ActionEntry actionEntry) {
+		return (actionEntry == null) ? "nothing" : actionEntry.getAction().getClass().getSimpleName();
+	}
+}
@@ -66,6 +66,14 @@ public interface ClientConnection {
 	 */
 	public String readFromConnection();
 
+	/**
+	 * Used by {@link Session} to check whether there is client input waiting to be
+	 * read, without reading it.
+	 * 
+	 * @return true if {@link #readFromConnection()} would return input
+	 */
+	public boolean hasInput();
+
 	/**
 	 * Used when Session is ready to shutdown, but allows any remaining queued text
 	 * to be sent to client inside ClientConnection.
@@ -43,6 +43,7 @@ public class ClientConnectionTelnet implements ClientConnection {
 	private final int SEND_LIMIT = 1000;
 	private ArrayList<String> recieveList;
 	private final int RECIEVE_LIMIT = 1000;
+	private boolean overflowNotified;
 	private StringBuilder sb = new StringBuilder();
 
 	private Session sess;
@@ -396,6 +397,12 @@ public class ClientConnectionTelnet implements ClientConnection {
 			MyLogger.log(Level.FINE, "readToConnection: '" + string + "'");
 			if (!(recieveList.size() >= RECIEVE_LIMIT)) {
 				recieveList.add(string);
+				overflowNotified = false;
+			} else if (!overflowNotified) {
+				// Only tell the client once per overflow, rather than once per dropped line.
+				overflowNotified = true;
+				MyLogger.log(Level.FINE, "ClientConnectionTelnet: Input queue full, input dropped.");
+				sess.notifyInputOverflow();
 			}
 
 			sess.notifyInput();
@@ -441,6 +448,13 @@ public class ClientConnectionTelnet implements ClientConnection {
 		}
 	}
 
+	@Override
+	public boolean hasInput() {
+		synchronized (this) {
+			return !recieveList.isEmpty();
+		}
+	}
+
 	/**
 	 * This will remove the any SelectionKey's from the SocketChannel's Selector
 	 * once finished sending output to client.
@@ -2,6 +2,7 @@ package fireengine.gameworld;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import org.hibernate.HibernateException;
@@ -10,12 +11,18 @@ import org.hibernate.query.Query;
 
 import fireengine.character.player.Player;
 import fireengine.gameworld.map.GameMap;
+import fireengine.gameworld.map.MapRegionCache;
+import fireengine.gameworld.map.MapRenderer;
+import fireengine.gameworld.map.PathFinder;
+import fireengine.gameworld.map.RoomPosition;
+import fireengine.gameworld.map.WildernessGenerator;
 import fireengine.gameworld.map.exception.MapExceptionMapLoad;
 import fireengine.gameworld.map.exception.MapExceptionRoomExists;
 import fireengine.gameworld.map.room.Room;
 import fireengine.main.FireEngineMain;
 import fireengine.util.CheckedHibernateException;
 import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
 import fireengine.util.MyLogger;
 
 /*
@@ -41,12 +48,30 @@ import fireengine.util.MyLogger;
  * @author Ben Hook
  */
 public class GameWorld {
-	// TODO This should probably be a hashmap etc based on map id
-	// TODO See if concurrent list can be used.
-	private final static ArrayList<GameMap> mapList = new ArrayList<>();
+	/**
+	 * Loaded {@link GameMap}s by id, and by name. Read without locking; changed
+	 * only while holding mapLock, so the two stay in step.
+	 */
+	private final static ConcurrentHashMap<Integer, GameMap> mapsById = new ConcurrentHashMap<>();
+	private final static ConcurrentHashMap<String, GameMap> mapsByName = new ConcurrentHashMap<>();
+	private final static Object mapLock = new Object();
+	/**
+	 * Instance {@link GameMap}s kept in memory only, by id.
+	 */
+	private final static ConcurrentHashMap<Integer, GameMap> instances = new ConcurrentHashMap<>();
+	/**
+	 * Main map from the mainMapID setting, once found.
+	 */
+	private static volatile GameMap mainMap;
 
 	public static void setupGameworld() throws CheckedHibernateException, MapExceptionMapLoad, MapExceptionRoomExists {
+		GameMap.setupCoordinateMode();
+		MapRegionCache.setupRegionCache();
+		Room.setupExitStorage();
+		MapRenderer.setupRenderer();
+		PathFinder.setupPathFinder();
 		loadMaps();
+		createWildernessMaps();
 
 		GameMap mainMap = getMainMap();
 
@@ -55,6 +80,7 @@ public class GameWorld {
 			try {
 				mainMap = GameMap.createMap("Mainland");
 				addMap(mainMap);
+				GameWorld.mainMap = mainMap;
 			} catch (CheckedHibernateException e) {
 				FireEngineMain.hibernateException(e);
 				return;
@@ -89,7 +115,7 @@ public class GameWorld {
 	 * @throws CheckedHibernateException
 	 */
 	private static void loadMaps() throws CheckedHibernateException {
-		synchronized (mapList) {
+		synchronized (mapLock) {
 			org.hibernate.Session hibSess = FireEngineMain.hibSessFactory.openSession();
 			Transaction tx = null;
 
@@ -100,6 +126,12 @@ public class GameWorld {
 
 				@SuppressWarnings("unchecked")
 				List<GameMap> mapsFound = (List<GameMap>) query.list();
+				if (GameMap.getCoordinateMode() == GameMap.COORDINATE_MODE.EMBEDDED) {
+					for (GameMap foundMap : mapsFound) {
+						foundMap.migrateToEmbedded(hibSess);
+						foundMap.loadRooms(hibSess);
+					}
+				}
 				tx.commit();
 
 				if (mapsFound.isEmpty()) {
@@ -121,6 +153,67 @@ public class GameWorld {
 			} finally {
 				hibSess.close();
 			}
+
+			for (GameMap gameMap : getMaps()) {
+				try {
+					int problems = gameMap.checkConsistency();
+					if (problems > 0) {
+						MyLogger.log(Level.SEVERE, String.format(
+								"GameWorld: GameMap '%s' failed consistency check with %d problem(s).",
+								gameMap.getName(), problems));
+					}
+				} catch (CheckedHibernateException e) {
+					MyLogger.log(Level.SEVERE, String.format(
+							"GameWorld: Hibernate exception while trying to checkConsistency on %s.", gameMap.getName()),
+							e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the wilderness {@link GameMap}s listed in the wildernessMaps setting
+	 * ("name:seed" entries separated by ";") that do not exist yet. See
+	 * {@link WildernessGenerator}.
+	 */
+	private static void createWildernessMaps() {
+		String setting = ConfigLoader.getSetting("wildernessMaps");
+		if ((setting == null) || setting.trim().isEmpty()) {
+			return;
+		}
+		if (GameMap.getCoordinateMode() != GameMap.COORDINATE_MODE.EMBEDDED) {
+			MyLogger.log(Level.WARNING,
+					"GameWorld: wildernessMaps needs mapCoordinateMode EMBEDDED, not creating wilderness maps.");
+			return;
+		}
+
+		for (String entry : setting.split(";")) {
+			String[] parts = entry.split(":");
+			if ((parts.length != 2) || parts[0].trim().isEmpty()) {
+				MyLogger.log(Level.WARNING, String.format("GameWorld: Invalid wildernessMaps entry '%s'.", entry));
+				continue;
+			}
+			String name = parts[0].trim();
+			if (findMap(name) != null) {
+				continue;
+			}
+
+			long seed;
+			try {
+				seed = Long.parseLong(parts[1].trim());
+			} catch (NumberFormatException e) {
+				MyLogger.log(Level.WARNING, String.format("GameWorld: Invalid seed in wildernessMaps entry '%s'.", entry));
+				continue;
+			}
+
+			try {
+				MyLogger.log(Level.INFO, String.format("GameWorld: Creating wilderness map '%s' with seed %d.", name, seed));
+				addMap(GameMap.createWilderness(name, seed));
+			} catch (CheckedHibernateException e) {
+				MyLogger.log(Level.SEVERE,
+						String.format("GameWorld: Hibernate exception while trying to create wilderness map '%s'.", name),
+						e);
+			}
 		}
 	}
 
@@ -132,14 +225,7 @@ public class GameWorld {
 	 * @return
 	 */
 	public static GameMap findMap(String name) {
-		synchronized (mapList) {
-			for (GameMap foundMap : mapList) {
-				if (foundMap.getName().equals(name)) {
-					return foundMap;
-				}
-			}
-			return null;
-		}
+		return mapsByName.get(name);
 	}
 
 	/**
@@ -150,14 +236,11 @@ public class GameWorld {
 	 * @return
 	 */
 	public static GameMap findMap(int id) {
-		synchronized (mapList) {
-			for (GameMap foundMap : mapList) {
-				if (foundMap.getId() == id) {
-					return foundMap;
-				}
-			}
-			return null;
+		GameMap gameMap = mapsById.get(id);
+		if ((gameMap == null) && (id < 0)) {
+			gameMap = instances.get(id);
 		}
+		return gameMap;
 	}
 
 	/**
@@ -166,25 +249,118 @@ public class GameWorld {
 	 * @param gameMap {@link GameMap} to add to map list
 	 */
 	public static void addMap(GameMap gameMap) {
-		synchronized (mapList) {
-			for (GameMap foundMap : mapList) {
-				if (foundMap.getId() == gameMap.getId()) {
-					// TODO probably throw error.
-					return;
-				}
+		synchronized (mapLock) {
+			if (mapsById.putIfAbsent(gameMap.getId(), gameMap) != null) {
+				// TODO probably throw error.
+				return;
+			}
+			if (mapsByName.putIfAbsent(gameMap.getName(), gameMap) != null) {
+				MyLogger.log(Level.WARNING, String.format(
+						"GameWorld: GameMap %d has the same name '%s' as another map, and cannot be found by name.",
+						gameMap.getId(), gameMap.getName()));
 			}
-			mapList.add(gameMap);
 			MyLogger.log(Level.INFO, String.format("GameWorld: Loaded GameMap '%s' with %s room(s).", gameMap.getName(),
 					gameMap.getRoomCount()));
 		}
 	}
 
+	/**
+	 * Finds the instance of a {@link Room} held by its loaded {@link GameMap}, for
+	 * a copy of the Room loaded in another Hibernate Session (such as a
+	 * {@link Player}'s last room). With lazy region loading this loads the Room's
+	 * region if needed.
+	 *
+	 * @param room Room to find the loaded instance of
+	 * @return loaded instance of the Room, or the given Room if not found
+	 */
+	public static Room resolveRoom(Room room) {
+		GameMap gameMap = (room.getMap() == null) ? null : findMap(room.getMap().getId());
+		RoomPosition position = room.getPosition();
+		if ((gameMap == null) || (gameMap == room.getMap()) || (position == null)) {
+			return room;
+		}
+
+		Room loadedRoom = gameMap.getRoom(position.getX(), position.getY(), position.getZ());
+		if ((loadedRoom == null) || (loadedRoom.getId() != room.getId())) {
+			return room;
+		}
+		return loadedRoom;
+	}
+
+	/**
+	 * Creates an instance of the template {@link GameMap} (see
+	 * {@link GameMap#createInstance(GameMap, String, boolean)}) and adds it to the
+	 * game world: to the map list if persistent, else to the instances.
+	 *
+	 * @param template   map to copy
+	 * @param name       name to set on the instance
+	 * @param persistent true to save the instance
+	 * @return new instance map
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public static GameMap createInstance(GameMap template, String name, boolean persistent)
+			throws CheckedHibernateException {
+		GameMap instance = GameMap.createInstance(template, name, persistent);
+		if (instance.isTransient()) {
+			instances.put(instance.getId(), instance);
+		} else {
+			addMap(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Removes an instance {@link GameMap} from the game world, if no players are
+	 * in it. Its Rooms are simply dropped with it, and a persistent instance's
+	 * saved Rooms are left in the database.
+	 *
+	 * @param instance instance map to remove
+	 * @return true if removed, false if players are still in it
+	 */
+	public static boolean closeInstance(GameMap instance) {
+		if (instance.hasPlayers()) {
+			return false;
+		}
+		if (instance.isTransient()) {
+			return instances.remove(instance.getId()) != null;
+		}
+		synchronized (mapLock) {
+			mapsByName.remove(instance.getName(), instance);
+			return mapsById.remove(instance.getId(), instance);
+		}
+	}
+
+	/**
+	 * @return new list of the instance {@link GameMap}s kept in memory only
+	 */
+	public static List<GameMap> getInstances() {
+		return new ArrayList<>(instances.values());
+	}
+
+	/**
+	 * @return new list of all loaded {@link GameMap}s
+	 */
+	public static List<GameMap> getMaps() {
+		return new ArrayList<>(mapsById.values());
+	}
+
+	/**
+	 * Returns the main {@link GameMap}, as set by the mainMapID setting. Looked up
+	 * once, then remembered.
+	 *
+	 * @return main map, or null if not loaded
+	 */
 	public static GameMap getMainMap() {
-		return GameWorld.findMap(Integer.parseInt(ConfigLoader.getSetting("mainMapID")));
+		GameMap mainMap = GameWorld.mainMap;
+		if (mainMap == null) {
+			mainMap = findMap(MathUtils.parseInt(ConfigLoader.getSetting("mainMapID"), -1));
+			GameWorld.mainMap = mainMap;
+		}
+		return mainMap;
 	}
 
 	public static void saveGameWorld() {
-		for (GameMap gameMap : mapList) {
+		for (GameMap gameMap : getMaps()) {
 			try {
 				GameMap.saveMap(gameMap);
 			} catch (CheckedHibernateException e) {
@@ -18,6 +18,7 @@ import fireengine.main.FireEngineMain;
 import fireengine.util.CheckedHibernateException;
 import fireengine.util.IDSequenceGenerator;
 import fireengine.util.MyLogger;
+import fireengine.util.WriteBehindQueue;
 
 @Entity
 @Table(name = "COORDINATE")
@@ -163,6 +164,11 @@ public class Coordinate {
 
 	public static Coordinate createCoord(GameMap map, int x, int y, int z) throws CheckedHibernateException {
 		Coordinate newCoord = new Coordinate(map, x, y, z);
+		MapBatch batch = MapBatch.current(map);
+		if (batch != null) {
+			batch.addCoord(newCoord);
+			return newCoord;
+		}
 		try {
 			saveCoord(newCoord);
 		} catch (MapExceptionCoordinateNull e) {
@@ -186,6 +192,10 @@ public class Coordinate {
 		if (coord == null) {
 			throw new MapExceptionCoordinateNull("Coordinate: Tried to saveCoord on a null Coordinate.");
 		}
+		if (WriteBehindQueue.isEnabled()) {
+			WriteBehindQueue.markDirty(coord);
+			return;
+		}
 
 		org.hibernate.Session hibSess = null;
 		Transaction tx = null;
@@ -222,6 +232,10 @@ public class Coordinate {
 		if (coord == null) {
 			throw new MapExceptionCoordinateNull("Coordinate: Tried to deleteCoordf on a null Coordinate.");
 		}
+		if (WriteBehindQueue.isEnabled()) {
+			WriteBehindQueue.markDeleted(coord);
+			return;
+		}
 
 		org.hibernate.Session hibSess = null;
 		Transaction tx = null;
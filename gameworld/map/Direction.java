@@ -1,8 +1,8 @@
 package fireengine.gameworld.map;
 
-import java.util.regex.Pattern;
-
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -28,66 +28,148 @@ import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
  * @author Ben Hook
  */
 public class Direction {
-	private static Pattern upPattern = Pattern.compile("U(?:P)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern downPattern = Pattern.compile("D(?:OWN)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern northPattern = Pattern.compile("N(?:ORTH)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern northEastPattern = Pattern.compile("N(?:ORTH)?E(?:AST)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern eastPattern = Pattern.compile("E(?:AST)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern southEastPattern = Pattern.compile("S(?:OUTH)?E(?:AST)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern southPattern = Pattern.compile("S(?:OUTH)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern southWestPattern = Pattern.compile("S(?:OUTH)?W(?:EST)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern westPattern = Pattern.compile("W(?:EST)?", Pattern.CASE_INSENSITIVE);
-	private static Pattern northWestPattern = Pattern.compile("N(?:ORTH)?W(?:EST)?", Pattern.CASE_INSENSITIVE);
+	/**
+	 * Every accepted spelling of every direction (upper case), mapped to its
+	 * direction. Covers the same spellings as the old per-direction Patterns, such
+	 * as "N", "NORTH", "NE", "NEAST", "NORTHE" and "NORTHEAST".
+	 */
+	private static final HashMap<String, DIRECTION> directionLookup = new HashMap<>();
 
 	/**
-	 * Enum list of supported directions.
-	 *
-	 * @author Ben Hook
+	 * Longest accepted spelling, used to reject long input before doing a lookup.
 	 */
-	public static enum DIRECTION {
-		UP, DOWN, NORTH, NORTHEAST, EAST, SOUTHEAST, SOUTH, SOUTHWEST, WEST, NORTHWEST
-	}
+	private static final int MAX_DIRECTION_LENGTH;
 
 	/**
-	 * Parses directions as text into the relevant direction enum value. Returns
-	 * null if no match found.
+	 * Enum list of supported directions, with the change in x, y and z coordinate
+	 * when moving in that direction.
 	 *
-	 * @param text
-	 * @return
+	 * @author Ben Hook
 	 */
-	public static DIRECTION parseDirection(String text) {
-		if (upPattern.matcher(text).matches()) {
-			return DIRECTION.UP;
+	public static enum DIRECTION {
+		UP(0, 0, 1), DOWN(0, 0, -1), NORTH(0, 1, 0), NORTHEAST(1, 1, 0), EAST(1, 0, 0), SOUTHEAST(1, -1, 0),
+		SOUTH(0, -1, 0), SOUTHWEST(-1, -1, 0), WEST(-1, 0, 0), NORTHWEST(-1, 1, 0);
+
+		private final int dx;
+		private final int dy;
+		private final int dz;
+		private DIRECTION opposite;
+
+		static {
+			UP.opposite = DOWN;
+			DOWN.opposite = UP;
+			NORTH.opposite = SOUTH;
+			NORTHEAST.opposite = SOUTHWEST;
+			EAST.opposite = WEST;
+			SOUTHEAST.opposite = NORTHWEST;
+			SOUTH.opposite = NORTH;
+			SOUTHWEST.opposite = NORTHEAST;
+			WEST.opposite = EAST;
+			NORTHWEST.opposite = SOUTHEAST;
 		}
-		if (downPattern.matcher(text).matches()) {
-			return DIRECTION.DOWN;
+
+		private DIRECTION(int dx, int dy, int dz) {
+			this.dx = dx;
+			this.dy = dy;
+			this.dz = dz;
 		}
-		if (northPattern.matcher(text).matches()) {
-			return DIRECTION.NORTH;
+
+		/**
+		 * @return change in x coordinate when moving in this direction
+		 */
+		public int getDx() {
+			return dx;
 		}
-		if (northEastPattern.matcher(text).matches()) {
-			return DIRECTION.NORTHEAST;
+
+		/**
+		 * @return change in y coordinate when moving in this direction
+		 */
+		public int getDy() {
+			return dy;
 		}
-		if (eastPattern.matcher(text).matches()) {
-			return DIRECTION.EAST;
+
+		/**
+		 * @return change in z coordinate when moving in this direction
+		 */
+		public int getDz() {
+			return dz;
 		}
-		if (southEastPattern.matcher(text).matches()) {
-			return DIRECTION.SOUTHEAST;
+
+		/**
+		 * @return the direction opposite to this one
+		 */
+		public DIRECTION getOpposite() {
+			return opposite;
 		}
-		if (southPattern.matcher(text).matches()) {
-			return DIRECTION.SOUTH;
+	}
+
+	static {
+		addSpellings(DIRECTION.UP, new String[] { "U", "UP" });
+		addSpellings(DIRECTION.DOWN, new String[] { "D", "DOWN" });
+		addSpellings(DIRECTION.NORTH, new String[] { "N", "NORTH" });
+		addSpellings(DIRECTION.NORTHEAST, new String[] { "N", "NORTH" }, new String[] { "E", "EAST" });
+		addSpellings(DIRECTION.EAST, new String[] { "E", "EAST" });
+		addSpellings(DIRECTION.SOUTHEAST, new String[] { "S", "SOUTH" }, new String[] { "E", "EAST" });
+		addSpellings(DIRECTION.SOUTH, new String[] { "S", "SOUTH" });
+		addSpellings(DIRECTION.SOUTHWEST, new String[] { "S", "SOUTH" }, new String[] { "W", "WEST" });
+		addSpellings(DIRECTION.WEST, new String[] { "W", "WEST" });
+		addSpellings(DIRECTION.NORTHWEST, new String[] { "N", "NORTH" }, new String[] { "W", "WEST" });
+
+		int maxLength = 0;
+		for (String spelling : directionLookup.keySet()) {
+			maxLength = Math.max(maxLength, spelling.length());
 		}
-		if (southWestPattern.matcher(text).matches()) {
-			return DIRECTION.SOUTHWEST;
+		MAX_DIRECTION_LENGTH = maxLength;
+	}
+
+	/**
+	 * Adds every combination of the given short/long word forms to the lookup,
+	 * such as "S"/"SOUTH" followed by "E"/"EAST".
+	 *
+	 * @param direction direction the spellings map to
+	 * @param parts     alternative spellings of each part of the direction name
+	 */
+	private static void addSpellings(DIRECTION direction, String[]... parts) {
+		List<String> spellings = new ArrayList<>();
+		spellings.add("");
+
+		for (String[] part : parts) {
+			List<String> extended = new ArrayList<>();
+			for (String prefix : spellings) {
+				for (String option : part) {
+					extended.add(prefix + option);
+				}
+			}
+			spellings = extended;
+		}
+
+		for (String spelling : spellings) {
+			directionLookup.put(spelling, direction);
 		}
-		if (westPattern.matcher(text).matches()) {
-			return DIRECTION.WEST;
+	}
+
+	/**
+	 * Parses directions as text into the relevant direction enum value. Returns
+	 * null if no match found. Matching is case insensitive.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public static DIRECTION parseDirection(String text) {
+		if ((text == null) || (text.length() > MAX_DIRECTION_LENGTH)) {
+			return null;
 		}
-		if (northWestPattern.matcher(text).matches()) {
-			return DIRECTION.NORTHWEST;
+
+		char[] upper = new char[text.length()];
+		for (int i = 0; i < upper.length; i++) {
+			char c = text.charAt(i);
+			if ((c >= 'a') && (c <= 'z')) {
+				c -= ('a' - 'A');
+			}
+			upper[i] = c;
 		}
 
-		return null;
+		return directionLookup.get(new String(upper));
 	}
 
 	/**
@@ -95,44 +177,8 @@ public class Direction {
 	 *
 	 * @param direction
 	 * @return
-	 * @throws MapExceptionDirectionNotSupported
 	 */
-	public static DIRECTION oppositeDirection(DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		switch (direction) {
-		case UP: {
-			return DIRECTION.DOWN;
-		}
-		case DOWN: {
-			return DIRECTION.UP;
-		}
-		case NORTH: {
-			return DIRECTION.SOUTH;
-		}
-		case NORTHEAST: {
-			return DIRECTION.SOUTHWEST;
-		}
-		case EAST: {
-			return DIRECTION.WEST;
-		}
-		case SOUTHEAST: {
-			return DIRECTION.NORTHWEST;
-		}
-		case SOUTH: {
-			return DIRECTION.NORTH;
-		}
-		case SOUTHWEST: {
-			return DIRECTION.NORTHEAST;
-		}
-		case WEST: {
-			return DIRECTION.EAST;
-		}
-		case NORTHWEST: {
-			return DIRECTION.SOUTHEAST;
-		}
-		default: {
-			throw new MapExceptionDirectionNotSupported(
-					"Direction: oppositeDirection missing case for direction " + direction.toString());
-		}
-		}
+	public static DIRECTION oppositeDirection(DIRECTION direction) {
+		return direction.getOpposite();
 	}
 }
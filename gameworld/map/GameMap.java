@@ -1,9 +1,14 @@
 package fireengine.gameworld.map;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
@@ -16,13 +21,17 @@ import javax.persistence.MapKeyJoinColumn;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
+import javax.persistence.Transient;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.HibernateException;
 import org.hibernate.Transaction;
+import org.hibernate.query.Query;
+
+import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.GameWorld;
 import fireengine.gameworld.map.exception.MapExceptionCoordinateNull;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionExitExists;
 import fireengine.gameworld.map.exception.MapExceptionExitRoomNull;
 import fireengine.gameworld.map.exception.MapExceptionRoomExists;
@@ -31,10 +40,10 @@ import fireengine.gameworld.map.exit.RoomExit;
 import fireengine.gameworld.map.room.Room;
 import fireengine.main.FireEngineMain;
 import fireengine.util.CheckedHibernateException;
+import fireengine.util.ConfigLoader;
 import fireengine.util.IDSequenceGenerator;
 import fireengine.util.MyLogger;
-
-import java.util.stream.Collectors;
+import fireengine.util.WriteBehindQueue;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -57,11 +66,27 @@ import java.util.stream.Collectors;
  * Contains all {@link Room}s. Contains functions to do with the map, including
  * function to display map.
  *
+ * <p>
+ * A GameMap with a wilderness seed is a wilderness map: its Rooms come from a
+ * {@link WildernessGenerator}, generated a {@link MapRegion} at a time as
+ * they are looked up, and only Rooms that are changed or have had a player in
+ * them are persisted. Wilderness maps need {@link COORDINATE_MODE#EMBEDDED}.
+ * </p>
+ *
+ * <p>
+ * An instance map (see {@link #createInstance(GameMap, String, boolean)}) is a
+ * copy of a template map, such as a dungeon per group of players. Its Rooms
+ * are copied from the template's the first time each is looked up, sharing
+ * their names, descriptions and exits until changed, so creating an instance
+ * costs nothing per Room. Instances are kept in memory only, unless created as
+ * persistent.
+ * </p>
+ *
  * @author Ben Hook
  */
 @Entity
 @Table(name = "GAME_MAP")
-public class GameMap {
+public class GameMap implements Cloneable, WriteBehindQueue.Copyable {
 	@Id
 	@Column(name = "ID", nullable = false)
 	@NotNull
@@ -75,6 +100,10 @@ public class GameMap {
 	@NotNull
 	private String name;
 
+	/**
+	 * Only modified holding this GameMap's monitor, which the WriteBehindQueue
+	 * also holds while copying the map to save it.
+	 */
 	// Example Hibernate mapping for 'Bidirectional @OneToMany'
 	// https://vladmihalcea.com/the-best-way-to-map-a-onetomany-association-with-jpa-and-hibernate/
 	// https://www.baeldung.com/hibernate-persisting-maps
@@ -91,6 +120,104 @@ public class GameMap {
 	@JoinColumn(name = "SPAWN_ROOM")
 	private Room spawnRoom;
 
+	/**
+	 * Seed of the {@link WildernessGenerator}, or null if not a wilderness map.
+	 */
+	@Column(name = "WILDERNESS_SEED")
+	private Long wildernessSeed;
+
+	/**
+	 * Id of the template map of a persistent instance map, or null.
+	 */
+	@Column(name = "TEMPLATE_MAP")
+	private Integer templateMapId;
+
+	/**
+	 * Last id given to an instance map kept in memory only, counting down from -1
+	 * so they never clash with persisted ids.
+	 */
+	private static final AtomicInteger transientIds = new AtomicInteger();
+
+	/**
+	 * How {@link Room} positions are persisted.
+	 */
+	public static enum COORDINATE_MODE {
+		/**
+		 * Each Room is mapped to a {@link Coordinate} entity through the
+		 * COORD_ROOM_MAPPING join table of rooms, and the whole GameMap is saved when
+		 * a Room changes.
+		 */
+		TABLE,
+		/**
+		 * Each Room holds its own {@link RoomPosition} columns, rooms is left empty,
+		 * and only changed Rooms are saved.
+		 */
+		EMBEDDED
+	}
+
+	private static COORDINATE_MODE coordinateMode = COORDINATE_MODE.TABLE;
+
+	/**
+	 * Whether the index of the {@link Room}s of the GameMap by position is built.
+	 * The index is held in parts by the {@link MapRegion}s, so finding a Room by x,
+	 * y and z is a region lookup and an array read, without locking. Built on
+	 * first use, as Hibernate fills rooms after construction, and kept up to date
+	 * by createRoom and deleteRoom.
+	 */
+	@Transient
+	private volatile boolean indexesBuilt;
+	/**
+	 * Number of Rooms in the index by position.
+	 */
+	@Transient
+	private final AtomicInteger roomCount = new AtomicInteger();
+	/**
+	 * Index of the {@link Coordinate} of each {@link Room} in rooms, by Room id.
+	 * Only filled in {@link COORDINATE_MODE#TABLE}. Only changed holding
+	 * indexLock.
+	 */
+	@Transient
+	private final ConcurrentHashMap<Integer, Coordinate> roomCoordIndex = new ConcurrentHashMap<>();
+	/**
+	 * Rooms loaded by {@link #loadRooms(org.hibernate.Session)} in
+	 * {@link COORDINATE_MODE#EMBEDDED}, until the indexes are built from them.
+	 * Guarded by indexLock.
+	 */
+	@Transient
+	private List<Room> loadedRooms;
+	/**
+	 * Held to change the indexes, not to read them.
+	 */
+	@Transient
+	private final Object indexLock = new Object();
+	@Transient
+	private final MapRenderer renderer = new MapRenderer(this);
+	@Transient
+	private final PathFinder pathFinder = new PathFinder(this);
+	/**
+	 * {@link MapRegion}s by region position, created on first use.
+	 */
+	@Transient
+	private final MapRegionTable regions = new MapRegionTable(this);
+	@Transient
+	private volatile WildernessGenerator generator;
+	/**
+	 * Template map of an instance map, found from templateMapId if not set.
+	 */
+	@Transient
+	private volatile GameMap template;
+	/**
+	 * Positions of an instance map whose Rooms were deleted, so they are not
+	 * copied from the template again. Only changed holding indexLock.
+	 */
+	@Transient
+	private final Set<RoomPosition> removedPositions = ConcurrentHashMap.newKeySet();
+	/**
+	 * Number of {@link Player}s in Rooms of the GameMap.
+	 */
+	@Transient
+	private final AtomicInteger players = new AtomicInteger();
+
 	@SuppressWarnings("unused")
 	private GameMap() {
 	}
@@ -101,6 +228,40 @@ public class GameMap {
 		this.name = name;
 	}
 
+	/**
+	 * Copies the map with its own rooms map, holding its monitor, and then the
+	 * Rooms in it, each holding its own.
+	 */
+	@Override
+	public Object copyForWrite(Map<Object, Object> copies) {
+		GameMap copy;
+		Map<Coordinate, Room> roomsCopy;
+		synchronized (this) {
+			try {
+				copy = (GameMap) super.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("GameMap: Failed to copy map for writing.", e);
+			}
+			roomsCopy = (rooms == null) ? null : new HashMap<>(rooms);
+		}
+		if (roomsCopy != null) {
+			roomsCopy.replaceAll((coord, room) -> (Room) WriteBehindQueue.copyForWrite(room, copies));
+		}
+		copy.rooms = roomsCopy;
+		return copy;
+	}
+
+	/**
+	 * Instance map of the template, with the given id.
+	 */
+	private GameMap(String name, GameMap template, int id) {
+		this.id = id;
+		rooms = new ConcurrentHashMap<Coordinate, Room>();
+		this.name = name;
+		this.template = template;
+		this.templateMapId = template.getId();
+	}
+
 	public int getId() {
 		return this.id;
 	}
@@ -113,6 +274,91 @@ public class GameMap {
 		return this.spawnRoom;
 	}
 
+	/**
+	 * @return true if the Rooms of the GameMap are generated by a
+	 *         {@link WildernessGenerator}
+	 */
+	public boolean isWilderness() {
+		return wildernessSeed != null;
+	}
+
+	/**
+	 * @return the {@link WildernessGenerator} of a wilderness map, or null
+	 */
+	public WildernessGenerator getGenerator() {
+		WildernessGenerator generator = this.generator;
+		if ((generator == null) && (wildernessSeed != null)) {
+			generator = new WildernessGenerator(wildernessSeed);
+			this.generator = generator;
+		}
+		return generator;
+	}
+
+	/**
+	 * @return true if the GameMap is an instance of a template map
+	 */
+	public boolean isInstance() {
+		return templateMapId != null;
+	}
+
+	/**
+	 * @return true if the GameMap is an instance map kept in memory only, which is
+	 *         never saved
+	 */
+	public boolean isTransient() {
+		return id < 0;
+	}
+
+	/**
+	 * @return template map of an instance map, or null if not an instance or the
+	 *         template is not loaded
+	 */
+	public GameMap getTemplate() {
+		GameMap template = this.template;
+		if ((template == null) && (templateMapId != null)) {
+			template = GameWorld.findMap(templateMapId);
+			this.template = template;
+		}
+		return template;
+	}
+
+	/**
+	 * @return true if any {@link Player} is in a Room of the GameMap
+	 */
+	public boolean hasPlayers() {
+		return players.get() > 0;
+	}
+
+	/**
+	 * Counts Players entering or leaving Rooms of the GameMap, called by
+	 * {@link Room}.
+	 *
+	 * @param change 1 for a Player added to a Room, -1 for one removed
+	 */
+	public void playersChanged(int change) {
+		players.addAndGet(change);
+	}
+
+	/**
+	 * @return true if Rooms are loaded a {@link MapRegion} at a time, for all
+	 *         persisted maps with lazy region loading (see {@link MapRegionCache})
+	 *         and always for wilderness maps
+	 */
+	private boolean isLoadedByRegion() {
+		return (coordinateMode == COORDINATE_MODE.EMBEDDED) && !isTransient()
+				&& (MapRegionCache.isLazy() || isWilderness());
+	}
+
+	/**
+	 * @return true if all Rooms of the GameMap are always loaded, so
+	 *         {@link #getLoadedRoom(int, int, int)} and {@link #getRooms()} see
+	 *         every Room; false if they are loaded a {@link MapRegion} at a time
+	 *         or, for an instance, copied from the template as they are first used
+	 */
+	public boolean isFullyLoaded() {
+		return !isLoadedByRegion() && !isInstance();
+	}
+
 	public Room getSpawnRoomOrCentre() {
 		Room returnRoom = this.spawnRoom;
 		if (returnRoom == null) {
@@ -123,6 +369,7 @@ public class GameMap {
 	}
 
 	public void setSpawnRoom(Room spawnRoom) throws CheckedHibernateException {
+		materializeRoom(spawnRoom);
 		this.spawnRoom = spawnRoom;
 		saveMap(spawnRoom.getMap());
 	}
@@ -154,67 +401,408 @@ public class GameMap {
 	 * @return
 	 */
 	public Room getRoom(int x, int y, int z) {
-		for (Entry<Coordinate, Room> mapEntry : rooms.entrySet()) {
-			if ((mapEntry.getKey().getX() == x) && (mapEntry.getKey().getY() == y) && (mapEntry.getKey().getZ() == z)) {
-				return mapEntry.getValue();
+		if (isLoadedByRegion()) {
+			ensureRegionLoaded(getRegion(x, y, z));
+		}
+		Room room = getLoadedRoom(x, y, z);
+		if ((room == null) && isInstance()) {
+			room = instantiateRoom(x, y, z);
+		}
+		return room;
+	}
+
+	/**
+	 * For an instance map, copies the Room at the position of the template map, if
+	 * there is one and it has not been copied or deleted already.
+	 *
+	 * @return Room of this map at the position, or null
+	 */
+	private Room instantiateRoom(int x, int y, int z) {
+		GameMap template = getTemplate();
+		if (template == null) {
+			return null;
+		}
+		Room templateRoom = template.getRoom(x, y, z);
+		if (templateRoom == null) {
+			return null;
+		}
+
+		RoomPosition position = templateRoom.getPosition();
+		if (removedPositions.contains(position)) {
+			return null;
+		}
+		Room room;
+		synchronized (indexLock) {
+			if (removedPositions.contains(position)) {
+				return null;
+			}
+			room = getLoadedRoom(x, y, z);
+			if (room != null) {
+				// Copied by another thread.
+				return room;
 			}
+			room = Room.createInstanceRoom(this, templateRoom);
+			indexPosition(room, false);
 		}
-		return null;
+		pathFinder.roomsLoaded();
+
+		MapRegion region = getRegion(room);
+		if (region.isResident()) {
+			region.addRoom(room);
+			MapRegionCache.roomsLoaded(1);
+		}
+		return room;
+	}
+
+	/**
+	 * Like {@link #getRoom(int, int, int)}, but with lazy region loading (see
+	 * {@link MapRegionCache}) only finds Rooms already resident, never loading a
+	 * region.
+	 *
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return resident {@link Room} at the coordinates, or null
+	 */
+	public Room getLoadedRoom(int x, int y, int z) {
+		ensureIndexes();
+		MapRegion region = findRegion(x, y, z);
+		return (region == null) ? null : region.getIndexedRoom(x, y);
 	}
 
 	/**
 	 * Attempts to get room in the direction off of the given {@link Room}.
-	 * Exception occurs if the resulting coordinate would be out of bounds, or given
-	 * direction is not yet supported by used functions.
 	 *
 	 * @param room      origin {@link Room} of which the direction points
 	 * @param direction {@link Direction.DIRECTION} from origin room the sought
 	 *                  after room is
-	 * @return {@link Room} at specified coordinates
-	 * @throws MapExceptionDirectionNotSupported method does not support supplied
-	 *                                           direction
+	 * @return {@link Room} at specified coordinates, or null if none there
 	 */
-	public Room getRoom(Room room, Direction.DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		Coordinate coord = room.getCoord();
+	public Room getRoom(Room room, Direction.DIRECTION direction) {
+		RoomPosition position = room.getPosition();
+		if (position == null) {
+			return null;
+		}
 
-		int otherX = xAdjustDirection(coord.getX(), direction);
-		int otherY = yAdjustDirection(coord.getY(), direction);
-		int otherZ = zAdjustDirection(coord.getZ(), direction);
+		int otherX = xAdjustDirection(position.getX(), direction);
+		int otherY = yAdjustDirection(position.getY(), direction);
+		int otherZ = zAdjustDirection(position.getZ(), direction);
 
 		return getRoom(otherX, otherY, otherZ);
 	}
 
 	public int getRoomCount() {
-		return rooms.size();
+		ensureIndexes();
+		return roomCount.get();
 	}
 
-	public Coordinate getCoord(Room room) {
-		List<Coordinate> foundList = rooms.entrySet().stream().filter(entry -> room.equals(entry.getValue()))
-				.map(Map.Entry::getKey).collect(Collectors.toList());
-		if (foundList.size() > 1) {
-			MyLogger.log(Level.WARNING, "GameMap: getCoord(Room) returned more than one matching Coordiante.");
+	/**
+	 * @return new list of all {@link Room}s in the GameMap, or all resident Rooms
+	 *         with lazy region loading
+	 */
+	public List<Room> getRooms() {
+		ensureIndexes();
+		List<Room> roomList = new ArrayList<>(roomCount.get());
+		for (MapRegion region : regions.values()) {
+			region.addIndexedRooms(roomList);
 		}
-		if (foundList.size() < 1) {
+		return roomList;
+	}
+
+	/**
+	 * Returns the position of the {@link Room} in the GameMap, for copies of a Room
+	 * loaded outside the GameMap without a position set. Use
+	 * {@link Room#getPosition()} instead.
+	 *
+	 * @param room Room to find position of
+	 * @return position of the Room, or null if not in the GameMap
+	 */
+	public RoomPosition getPosition(Room room) {
+		ensureIndexes();
+		Coordinate coord = roomCoordIndex.get(room.getId());
+		if (coord == null) {
 			return null;
 		}
-		return foundList.get(0);
+		return new RoomPosition(coord.getX(), coord.getY(), coord.getZ());
 	}
 
 	/**
-	 * Used to get a Coordinate belonging to the GameMap with given coordinates.
-	 * 
-	 * @param x
-	 * @param y
-	 * @param z
-	 * @return
+	 * @param room Room to find Coordinate of
+	 * @return the {@link Coordinate} entity of the Room, or null if not in the
+	 *         GameMap or in {@link COORDINATE_MODE#EMBEDDED}
+	 */
+	public Coordinate getCoord(Room room) {
+		ensureIndexes();
+		return roomCoordIndex.get(room.getId());
+	}
+
+	/**
+	 * Loads the {@link COORDINATE_MODE} from the server config. Must be called
+	 * before any GameMap is loaded.
+	 */
+	public static void setupCoordinateMode() {
+		String setting = ConfigLoader.getSetting("mapCoordinateMode");
+		if ((setting != null) && setting.trim().equalsIgnoreCase(COORDINATE_MODE.EMBEDDED.toString())) {
+			coordinateMode = COORDINATE_MODE.EMBEDDED;
+		} else {
+			coordinateMode = COORDINATE_MODE.TABLE;
+		}
+		MyLogger.log(Level.INFO, String.format("GameMap: Using coordinate mode %s.", coordinateMode));
+	}
+
+	public static COORDINATE_MODE getCoordinateMode() {
+		return coordinateMode;
+	}
+
+	/**
+	 * Builds the indexes if not yet built.
+	 */
+	private void ensureIndexes() {
+		if (!indexesBuilt) {
+			synchronized (indexLock) {
+				if (!indexesBuilt) {
+					buildIndexes(loadedRooms, false);
+					loadedRooms = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Builds the index by position and roomCoordIndex. In
+	 * {@link COORDINATE_MODE#TABLE} they are built from rooms, setting the position
+	 * of any Room without one from its Coordinate. In
+	 * {@link COORDINATE_MODE#EMBEDDED} they are built from the given Rooms. Must
+	 * be called holding indexLock.
+	 *
+	 * @param embeddedRooms Rooms to build from in EMBEDDED mode, may be null
+	 * @param logProblems   true to log problems found
+	 * @return number of problems found: null Rooms, Rooms at more than one
+	 *         position, or more than one Room at a position
+	 */
+	private int buildIndexes(Collection<Room> embeddedRooms, boolean logProblems) {
+		int problems = 0;
+		indexesBuilt = false;
+		for (MapRegion region : regions.values()) {
+			region.clearIndex();
+		}
+		roomCount.set(0);
+		roomCoordIndex.clear();
+
+		if (coordinateMode == COORDINATE_MODE.TABLE) {
+			List<Map.Entry<Coordinate, Room>> entries;
+			synchronized (this) {
+				entries = new ArrayList<>(rooms.entrySet());
+			}
+			for (Map.Entry<Coordinate, Room> entry : entries) {
+				Coordinate coord = entry.getKey();
+				Room room = entry.getValue();
+				if (room == null) {
+					if (logProblems) {
+						MyLogger.log(Level.WARNING,
+								String.format("GameMap: Map '%s' has a null Room at %s.", name, coord.toString()));
+					}
+					problems++;
+					continue;
+				}
+
+				RoomPosition position = new RoomPosition(coord.getX(), coord.getY(), coord.getZ());
+				if (!position.equals(room.getPosition())) {
+					// Saved along with the map next time it is saved.
+					room.setPosition(position);
+				}
+				if (roomCoordIndex.put(room.getId(), coord) != null) {
+					if (logProblems) {
+						MyLogger.log(Level.WARNING, String.format(
+								"GameMap: Map '%s' has Room %d at more than one Coordinate.", name, room.getId()));
+					}
+					problems++;
+				}
+				problems += indexPosition(room, logProblems);
+			}
+		} else if (embeddedRooms != null) {
+			for (Room room : embeddedRooms) {
+				if (room.getPosition() != null) {
+					problems += indexPosition(room, logProblems);
+				}
+			}
+		}
+
+		indexesBuilt = true;
+		return problems;
+	}
+
+	/**
+	 * Adds the {@link Room} to the index by position, in its {@link MapRegion}.
+	 * Must be called holding indexLock.
+	 *
+	 * @return 1 if another Room was already at the position, else 0
+	 */
+	private int indexPosition(Room room, boolean logProblems) {
+		RoomPosition position = room.getPosition();
+		Room previous = getRegion(position).indexRoom(position.getX(), position.getY(), room);
+		if (previous == null) {
+			roomCount.incrementAndGet();
+		} else if (previous != room) {
+			if (logProblems) {
+				MyLogger.log(Level.WARNING,
+						String.format("GameMap: Map '%s' has more than one Room at %s.", name, position.toString()));
+			}
+			return 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Removes the {@link Room} from the index by position, if it is the one
+	 * indexed at its position. Must be called holding indexLock.
+	 */
+	private void unindexPosition(Room room, RoomPosition position) {
+		MapRegion region = findRegion(position.getX(), position.getY(), position.getZ());
+		if ((region != null) && region.unindexRoom(position.getX(), position.getY(), room)) {
+			roomCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Checks the rooms loaded for the GameMap against themselves and against what
+	 * is persisted, logging any problems found: more than one Room at the same
+	 * position, a {@link Room} at more than one {@link Coordinate}, a null Room,
+	 * or a different number of Rooms in the database than were loaded. Also
+	 * rebuilds the indexes. Run when GameMaps are loaded.
+	 *
+	 * @return number of problems found
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public int checkConsistency() throws CheckedHibernateException {
+		int problems;
+		int roomCount;
+
+		synchronized (indexLock) {
+			Collection<Room> embeddedRooms = loadedRooms;
+			if ((embeddedRooms == null) && indexesBuilt) {
+				embeddedRooms = getRooms();
+			}
+			loadedRooms = null;
+			problems = buildIndexes(embeddedRooms, true);
+			roomCount = this.roomCount.get();
+		}
+
+		if (isLoadedByRegion()) {
+			// Only resident regions are loaded, so there is nothing to count against.
+			return problems;
+		}
+
+		long persistedCount = countPersistedRooms();
+		if (persistedCount != roomCount) {
+			MyLogger.log(Level.WARNING,
+					String.format("GameMap: Map '%s' has %d Room(s) loaded but %d persisted (%s mode).", name,
+							roomCount, persistedCount, coordinateMode));
+			problems++;
+		}
+
+		return problems;
+	}
+
+	/**
+	 * @return number of Rooms persisted for the GameMap: rows in
+	 *         COORD_ROOM_MAPPING in {@link COORDINATE_MODE#TABLE}, or positioned
+	 *         rows of ROOM in {@link COORDINATE_MODE#EMBEDDED}
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	private long countPersistedRooms() throws CheckedHibernateException {
+		org.hibernate.Session hibSess = null;
+		Transaction tx = null;
+
+		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
+			tx = hibSess.beginTransaction();
+
+			String countQuery = (coordinateMode == COORDINATE_MODE.TABLE)
+					? "SELECT COUNT(*) FROM COORD_ROOM_MAPPING WHERE GAMEMAP = :mapId"
+					: "SELECT COUNT(*) FROM ROOM WHERE MAP = :mapId AND POS_X IS NOT NULL";
+			Number count = (Number) hibSess.createNativeQuery(countQuery).setParameter("mapId", id).uniqueResult();
+
+			tx.commit();
+			return count.longValue();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
+			}
+			throw new CheckedHibernateException("GameMap: Hibernate error while trying to countPersistedRooms.", e);
+		} finally {
+			if (hibSess != null) {
+				hibSess.close();
+			}
+		}
+	}
+
+	/**
+	 * For {@link COORDINATE_MODE#EMBEDDED}, moves positions of Rooms still mapped
+	 * through COORD_ROOM_MAPPING onto the Rooms themselves, then removes the
+	 * mappings and their {@link Coordinate}s. Must be called inside a transaction
+	 * of the Hibernate Session the GameMap was loaded with, before
+	 * {@link #loadRooms(org.hibernate.Session)}.
+	 *
+	 * @param hibSess Hibernate Session the GameMap was loaded with
+	 * @return number of Rooms migrated
+	 */
+	public int migrateToEmbedded(org.hibernate.Session hibSess) {
+		if ((rooms == null) || rooms.isEmpty()) {
+			return 0;
+		}
+
+		List<Integer> coordIds = new ArrayList<>();
+		for (Map.Entry<Coordinate, Room> entry : rooms.entrySet()) {
+			Coordinate coord = entry.getKey();
+			if (entry.getValue() != null) {
+				entry.getValue().setPosition(new RoomPosition(coord.getX(), coord.getY(), coord.getZ()));
+			}
+			coordIds.add(coord.getId());
+		}
+
+		int migrated = rooms.size();
+		rooms.clear();
+		// Mapping rows must be gone before the Coordinates they point at.
+		hibSess.flush();
+		hibSess.createQuery("DELETE FROM Coordinate WHERE id IN (:ids)").setParameterList("ids", coordIds)
+				.executeUpdate();
+
+		MyLogger.log(Level.INFO,
+				String.format("GameMap: Migrated %d Room(s) of map '%s' to embedded positions.", migrated, name));
+		return migrated;
+	}
+
+	/**
+	 * For {@link COORDINATE_MODE#EMBEDDED}, loads the Rooms of the GameMap that
+	 * have a position, ready for the indexes to be built from. With lazy region
+	 * loading (see {@link MapRegionCache}), and for wilderness maps, nothing is
+	 * loaded here. Must be called
+	 * with the Hibernate Session the GameMap was loaded with, so the Rooms refer
+	 * to this GameMap instance.
+	 *
+	 * @param hibSess Hibernate Session the GameMap was loaded with
 	 */
-	public Coordinate getCoord(int x, int y, int z) {
-		for (Entry<Coordinate, Room> mapEntry : rooms.entrySet()) {
-			if ((mapEntry.getKey().getX() == x) && (mapEntry.getKey().getY() == y) && (mapEntry.getKey().getZ() == z)) {
-				return mapEntry.getKey();
+	public void loadRooms(org.hibernate.Session hibSess) {
+		if (isLoadedByRegion()) {
+			// Loaded a region at a time by getRoom instead.
+			synchronized (indexLock) {
+				loadedRooms = null;
+				indexesBuilt = false;
 			}
+			return;
+		}
+
+		Query<?> query = hibSess.createQuery("FROM Room WHERE map = :map AND position.x IS NOT NULL");
+		query.setParameter("map", this);
+
+		@SuppressWarnings("unchecked")
+		List<Room> roomList = (List<Room>) query.list();
+
+		synchronized (indexLock) {
+			loadedRooms = roomList;
+			indexesBuilt = false;
 		}
-		return null;
 	}
 
 	/**
@@ -228,18 +816,54 @@ public class GameMap {
 	 * @throws CheckedHibernateException hibernate error
 	 */
 	public Room createRoom(int x, int y, int z) throws MapExceptionRoomExists, CheckedHibernateException {
+		List<MapRegion> locked = lockRegions(x, y, z, x, y, z, 0);
+		try {
+			return createRoomLocked(x, y, z);
+		} finally {
+			unlockRegions(locked);
+		}
+	}
+
+	private Room createRoomLocked(int x, int y, int z) throws MapExceptionRoomExists, CheckedHibernateException {
 		Room foundRoom = getRoom(x, y, z);
 		if (foundRoom != null) {
 			throw new MapExceptionRoomExists(String
 					.format("GameMap: createRoom found room already at designated coordinates (%d, %d, %d).", x, y, z));
 		}
 
-		Room newRoom = null;
-		newRoom = Room.createRoom(this);
+		MapRegion region = getRegion(x, y, z);
+		region.setDirty(true);
+		Room newRoom;
+		if (isInstance()) {
+			// No id is taken unless the Room is saved.
+			newRoom = Room.createGeneratedRoom(this, new RoomPosition(x, y, z), null, null, 0);
+		} else {
+			newRoom = Room.createRoom(this, new RoomPosition(x, y, z));
+		}
 
-		Coordinate newCoord = Coordinate.createCoord(this, x, y, z);
-		rooms.put(newCoord, newRoom);
-		saveMap(this);
+		mapChanged();
+		if ((coordinateMode == COORDINATE_MODE.TABLE) && !isInstance()) {
+			Coordinate newCoord = Coordinate.createCoord(this, x, y, z);
+			synchronized (this) {
+				rooms.put(newCoord, newRoom);
+			}
+			synchronized (indexLock) {
+				ensureIndexes();
+				roomCoordIndex.put(newRoom.getId(), newCoord);
+				indexPosition(newRoom, false);
+			}
+			saveMap(this);
+		} else {
+			saveRooms(newRoom);
+			synchronized (indexLock) {
+				ensureIndexes();
+				indexPosition(newRoom, false);
+				removedPositions.remove(newRoom.getPosition());
+			}
+			region.addRoom(newRoom);
+			MapRegionCache.roomsLoaded(region.isResident() ? 1 : 0);
+		}
+		regionSaved(region);
 
 		return newRoom;
 	}
@@ -250,19 +874,16 @@ public class GameMap {
 	 *
 	 * @param room      origin room to create new room off of
 	 * @param direction direction to create new room off of origin room
-	 * @throws MapExceptionRoomExists            room already exists at provided
-	 *                                           coordinates
-	 * @throws CheckedHibernateException         hibernate error
-	 * @throws MapExceptionDirectionNotSupported method does not support supplied
-	 *                                           direction
+	 * @throws MapExceptionRoomExists    room already exists at provided coordinates
+	 * @throws CheckedHibernateException hibernate error
 	 */
 	public void createRoom(Room room, Direction.DIRECTION direction)
-			throws MapExceptionRoomExists, CheckedHibernateException, MapExceptionDirectionNotSupported {
-		Coordinate coord = room.getCoord();
+			throws MapExceptionRoomExists, CheckedHibernateException {
+		RoomPosition position = room.getPosition();
 
-		int otherX = xAdjustDirection(coord.getX(), direction);
-		int otherY = yAdjustDirection(coord.getY(), direction);
-		int otherZ = zAdjustDirection(coord.getZ(), direction);
+		int otherX = xAdjustDirection(position.getX(), direction);
+		int otherY = yAdjustDirection(position.getY(), direction);
+		int otherZ = zAdjustDirection(position.getZ(), direction);
 
 		createRoom(otherX, otherY, otherZ);
 	}
@@ -278,6 +899,16 @@ public class GameMap {
 	 * @throws CheckedHibernateException hibernate exception
 	 */
 	public void deleteRoom(int x, int y, int z) throws CheckedHibernateException, MapExceptionRoomNull {
+		// Along with the regions of the neighbouring Rooms, whose exits are removed.
+		List<MapRegion> locked = lockRegions(x, y, z, x, y, z, 1);
+		try {
+			deleteRoomLocked(x, y, z);
+		} finally {
+			unlockRegions(locked);
+		}
+	}
+
+	private void deleteRoomLocked(int x, int y, int z) throws CheckedHibernateException, MapExceptionRoomNull {
 		Room foundRoom = getRoom(x, y, z);
 
 		if (foundRoom == null) {
@@ -288,28 +919,63 @@ public class GameMap {
 		// need cascade + orphan removal.
 		for (Direction.DIRECTION direction : Direction.DIRECTION.values()) {
 			try {
-				deleteExit(foundRoom, direction);
+				deleteExitLocked(foundRoom, direction);
 			} catch (MapExceptionExitRoomNull e) {
 				// This is expected in some situations and is allowed
-			} catch (MapExceptionDirectionNotSupported e) {
-				MyLogger.log(Level.WARNING, "GameMap: MapExceptionDirectionNotSupported while destroyRoom.", e);
-				return;
 			}
 		}
 
-		Coordinate coord = getCoord(foundRoom);
-		try {
-			rooms.remove(coord);
-		} catch (NullPointerException e) {
-			MyLogger.log(Level.WARNING,
-					"GameMap: Null Coordinate when trying to remove Coordinate/Room entry from rooms Map.", e);
+		MapRegion region = getRegion(foundRoom);
+		region.setDirty(true);
+		Coordinate coord;
+		synchronized (indexLock) {
+			ensureIndexes();
+			unindexPosition(foundRoom, foundRoom.getPosition());
+			coord = roomCoordIndex.remove(foundRoom.getId());
+			if (isInstance()) {
+				removedPositions.add(foundRoom.getPosition());
+			}
 		}
-		try {
-			Coordinate.deleteCoord(coord);
-		} catch (MapExceptionCoordinateNull e) {
-			MyLogger.log(Level.WARNING, "GameMap: Coordinate null when trying to Hibernate delete the Coordinate.", e);
+		if (region.isResident()) {
+			region.removeRoom(foundRoom);
+			MapRegionCache.roomsEvicted(1);
 		}
-		saveMap(this);
+		mapChanged();
+		// Clear the position so it is free for a new Room under the unique index.
+		foundRoom.setPosition(null);
+
+		if ((coordinateMode == COORDINATE_MODE.TABLE) && !isInstance()) {
+			try {
+				synchronized (this) {
+					rooms.remove(coord);
+				}
+			} catch (NullPointerException e) {
+				MyLogger.log(Level.WARNING,
+						"GameMap: Null Coordinate when trying to remove Coordinate/Room entry from rooms Map.", e);
+			}
+			try {
+				MapBatch batch = MapBatch.current(this);
+				if (batch != null) {
+					batch.deleteCoord(coord);
+				} else {
+					Coordinate.deleteCoord(coord);
+				}
+			} catch (MapExceptionCoordinateNull e) {
+				MyLogger.log(Level.WARNING, "GameMap: Coordinate null when trying to Hibernate delete the Coordinate.",
+						e);
+			}
+			saveMap(this);
+		}
+		if (!foundRoom.isGenerated() && !isTransient()) {
+			// No longer in rooms to be cascaded to.
+			saveRoomsDirect(foundRoom);
+		} else {
+			MapBatch batch = MapBatch.current(this);
+			if (batch != null) {
+				batch.removeRoom(foundRoom);
+			}
+		}
+		regionSaved(region);
 	}
 
 	/**
@@ -318,23 +984,262 @@ public class GameMap {
 	 *
 	 * @param room      origin room to delete off of
 	 * @param direction direction off of origin room to delete
-	 * @throws MapExceptionRoomNull              no room found at supplied
-	 *                                           coordinates
-	 * @throws CheckedHibernateException         hibernate exception
-	 * @throws MapExceptionDirectionNotSupported method does not support supplied
-	 *                                           direction
+	 * @throws MapExceptionRoomNull      no room found at supplied coordinates
+	 * @throws CheckedHibernateException hibernate exception
 	 */
 	public void deleteRoom(Room room, Direction.DIRECTION direction)
-			throws MapExceptionRoomNull, CheckedHibernateException, MapExceptionDirectionNotSupported {
-		Coordinate coord = room.getCoord();
+			throws MapExceptionRoomNull, CheckedHibernateException {
+		RoomPosition position = room.getPosition();
 
-		int otherX = xAdjustDirection(coord.getX(), direction);
-		int otherY = yAdjustDirection(coord.getY(), direction);
-		int otherZ = zAdjustDirection(coord.getZ(), direction);
+		int otherX = xAdjustDirection(position.getX(), direction);
+		int otherY = yAdjustDirection(position.getY(), direction);
+		int otherZ = zAdjustDirection(position.getZ(), direction);
 
 		deleteRoom(otherX, otherY, otherZ);
 	}
 
+	/**
+	 * Opens a {@link MapBatch} on the current thread, so that the GameMap's saves
+	 * are held back and made in one transaction by {@link MapBatch#commit()}.
+	 * Callers must commit the batch in a finally block.
+	 *
+	 * @return new batch
+	 * @throws IllegalStateException if the thread already has a batch open
+	 */
+	public MapBatch beginBatch() {
+		return MapBatch.begin(this);
+	}
+
+	/**
+	 * Creates a {@link Room} at every empty position in the box between the two
+	 * corners (inclusive), saving them all in one transaction. Rooms are created
+	 * without exits; see {@link #linkRooms(RoomPosition, RoomPosition, boolean)}.
+	 *
+	 * @param from one corner of the box
+	 * @param to   opposite corner of the box
+	 * @return number of Rooms created
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public int fillRooms(RoomPosition from, RoomPosition to) throws CheckedHibernateException {
+		int created = 0;
+		List<MapRegion> locked = lockRegions(from, to, 0);
+		try {
+			MapBatch batch = beginBatch();
+			try {
+				for (int z = Math.min(from.getZ(), to.getZ()); z <= Math.max(from.getZ(), to.getZ()); z++) {
+					for (int y = Math.min(from.getY(), to.getY()); y <= Math.max(from.getY(), to.getY()); y++) {
+						for (int x = Math.min(from.getX(), to.getX()); x <= Math.max(from.getX(), to.getX()); x++) {
+							if (getRoom(x, y, z) == null) {
+								try {
+									createRoomLocked(x, y, z);
+									created++;
+								} catch (MapExceptionRoomExists e) {
+									// Cannot happen with the regions locked.
+								}
+							}
+						}
+					}
+				}
+			} finally {
+				batch.commit();
+			}
+		} finally {
+			unlockRegions(locked);
+		}
+		return created;
+	}
+
+	/**
+	 * Creates a {@link RoomExit} between every pair of neighbouring {@link Room}s
+	 * in the box between the two corners (inclusive) that are not yet joined,
+	 * saving them all in one transaction. Exits to Rooms outside the box are left
+	 * alone.
+	 *
+	 * @param from      one corner of the box
+	 * @param to        opposite corner of the box
+	 * @param diagonals true to also join Rooms diagonally
+	 * @return number of exits created
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public int linkRooms(RoomPosition from, RoomPosition to, boolean diagonals) throws CheckedHibernateException {
+		int minX = Math.min(from.getX(), to.getX());
+		int maxX = Math.max(from.getX(), to.getX());
+		int minY = Math.min(from.getY(), to.getY());
+		int maxY = Math.max(from.getY(), to.getY());
+		int minZ = Math.min(from.getZ(), to.getZ());
+		int maxZ = Math.max(from.getZ(), to.getZ());
+
+		int created = 0;
+		List<MapRegion> locked = lockRegions(from, to, 0);
+		try {
+			MapBatch batch = beginBatch();
+			try {
+				for (int z = minZ; z <= maxZ; z++) {
+					for (int y = minY; y <= maxY; y++) {
+						for (int x = minX; x <= maxX; x++) {
+							Room room = getRoom(x, y, z);
+							if (room == null) {
+								continue;
+							}
+							for (Direction.DIRECTION direction : Direction.DIRECTION.values()) {
+								boolean diagonal = (direction.getDx() != 0) && (direction.getDy() != 0);
+								if ((diagonal && !diagonals) || (room.getExit(direction) != null)) {
+									continue;
+								}
+								int otherX = x + direction.getDx();
+								int otherY = y + direction.getDy();
+								int otherZ = z + direction.getDz();
+								if ((otherX < minX) || (otherX > maxX) || (otherY < minY) || (otherY > maxY)
+										|| (otherZ < minZ) || (otherZ > maxZ)) {
+									continue;
+								}
+								try {
+									createExitLocked(room, direction);
+									created++;
+								} catch (MapExceptionExitRoomNull | MapExceptionExitExists e) {
+									// No Room there, or a one way exit already.
+								} catch (MapExceptionRoomNull e) {
+									MyLogger.log(Level.WARNING, "GameMap: Null Room while linking rooms.", e);
+								}
+							}
+						}
+					}
+				}
+			} finally {
+				batch.commit();
+			}
+		} finally {
+			unlockRegions(locked);
+		}
+		return created;
+	}
+
+	/**
+	 * Deletes every {@link Room} in the box between the two corners (inclusive),
+	 * along with their exits, saving the changes in one transaction. The spawn
+	 * room and Rooms with players in them are kept.
+	 *
+	 * @param from one corner of the box
+	 * @param to   opposite corner of the box
+	 * @return number of Rooms deleted
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public int deleteRooms(RoomPosition from, RoomPosition to) throws CheckedHibernateException {
+		int deleted = 0;
+		// Along with the regions just outside the box, whose exits into it are removed.
+		// No player can walk into a Room of a locked region, so none checked as empty
+		// gains one before it is deleted.
+		List<MapRegion> locked = lockRegions(from, to, 1);
+		try {
+			MapBatch batch = beginBatch();
+			try {
+				for (int z = Math.min(from.getZ(), to.getZ()); z <= Math.max(from.getZ(), to.getZ()); z++) {
+					for (int y = Math.min(from.getY(), to.getY()); y <= Math.max(from.getY(), to.getY()); y++) {
+						for (int x = Math.min(from.getX(), to.getX()); x <= Math.max(from.getX(), to.getX()); x++) {
+							Room room = getRoom(x, y, z);
+							if ((room == null) || room.equals(spawnRoom) || room.hasPlayers()) {
+								continue;
+							}
+							try {
+								deleteRoomLocked(x, y, z);
+								deleted++;
+							} catch (MapExceptionRoomNull e) {
+								// Cannot happen with the regions locked.
+							}
+						}
+					}
+				}
+			} finally {
+				batch.commit();
+			}
+		} finally {
+			unlockRegions(locked);
+		}
+		return deleted;
+	}
+
+	/**
+	 * Persists changes to the given {@link Room}s of the GameMap. In
+	 * {@link COORDINATE_MODE#TABLE} this saves the whole GameMap, cascading to its
+	 * Rooms; in {@link COORDINATE_MODE#EMBEDDED} only the given Rooms are saved.
+	 *
+	 * @param changedRooms Rooms that have changed
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public void saveRooms(Room... changedRooms) throws CheckedHibernateException {
+		if (isTransient()) {
+			return;
+		}
+		if ((coordinateMode == COORDINATE_MODE.TABLE) && !isInstance()) {
+			saveMap(this);
+		} else {
+			saveRoomsDirect(changedRooms);
+		}
+	}
+
+	/**
+	 * Persists the {@link Room} if it was generated for a wilderness map and not
+	 * yet persisted, as when a player enters it. Does nothing for other Rooms.
+	 *
+	 * @param room Room of the GameMap
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public void materializeRoom(Room room) throws CheckedHibernateException {
+		if (room.isGenerated() && !isTransient()) {
+			saveRoomsDirect(room);
+		}
+	}
+
+	/**
+	 * Saves the given {@link Room}s in one transaction, without saving the
+	 * GameMap. Generated Rooms are given a persistent id first.
+	 */
+	private static void saveRoomsDirect(Room... changedRooms) throws CheckedHibernateException {
+		if (changedRooms.length == 0) {
+			return;
+		}
+		MapBatch batch = MapBatch.current(changedRooms[0].getMap());
+		if (batch != null) {
+			batch.addRooms(changedRooms);
+			return;
+		}
+
+		for (Room room : changedRooms) {
+			if (room.isGenerated()) {
+				room.assignId();
+			}
+		}
+		if (WriteBehindQueue.isEnabled()) {
+			for (Room room : changedRooms) {
+				WriteBehindQueue.markDirty(room);
+			}
+			return;
+		}
+
+		org.hibernate.Session hibSess = null;
+		Transaction tx = null;
+
+		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
+			tx = hibSess.beginTransaction();
+
+			for (Room room : changedRooms) {
+				hibSess.saveOrUpdate(room);
+			}
+
+			tx.commit();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
+			}
+			throw new CheckedHibernateException("GameMap: Hibernate error while trying to saveRoomsDirect.", e);
+		} finally {
+			if (hibSess != null) {
+				hibSess.close();
+			}
+		}
+	}
+
 	/**
 	 * Creates an {@link RoomExit} in direction specified, from {@link Room}
 	 * supplied.
@@ -346,15 +1251,26 @@ public class GameMap {
 	 *                                           direction
 	 * @throws MapExceptionExitExists            exit already exists for origin room
 	 *                                           or room at direction
-	 * @throws MapExceptionDirectionNotSupported direction not supported by method
 	 * @throws CheckedHibernateException         hibernate exception
 	 */
-	public void createExit(Room room, Direction.DIRECTION direction)
-			throws MapExceptionRoomNull, MapExceptionExitRoomNull, MapExceptionExitExists,
-			MapExceptionDirectionNotSupported, CheckedHibernateException {
+	public void createExit(Room room, Direction.DIRECTION direction) throws MapExceptionRoomNull,
+			MapExceptionExitRoomNull, MapExceptionExitExists, CheckedHibernateException {
 		if (room == null) {
 			throw new MapExceptionRoomNull("GameMap: Tried to set exit on null room.");
 		}
+		List<MapRegion> locked = lockExitRegions(room, direction);
+		try {
+			createExitLocked(room, direction);
+		} finally {
+			unlockRegions(locked);
+		}
+	}
+
+	private void createExitLocked(Room room, Direction.DIRECTION direction) throws MapExceptionRoomNull,
+			MapExceptionExitRoomNull, MapExceptionExitExists, CheckedHibernateException {
+		if (room.getPosition() == null) {
+			throw new MapExceptionRoomNull("GameMap: Tried to set exit on a deleted room.");
+		}
 		if (room.getExit(direction) != null) {
 			throw new MapExceptionExitExists(
 					String.format("GameMap: RoomExit is not null %s of %s.", direction.toString(), room.getName()));
@@ -369,10 +1285,25 @@ public class GameMap {
 					Direction.oppositeDirection(direction).toString(), otherRoom.getName()));
 		}
 
-		RoomExit newExit = new RoomExit(true);
+		RoomExit newExit;
+		if (Room.getExitStorage() == Room.EXIT_STORAGE.MASK) {
+			// Plain exits need no ROOM_EXIT row of their own.
+			newExit = RoomExit.getOpenExit();
+		} else {
+			newExit = new RoomExit(true);
+		}
+		MapRegion region = getRegion(room);
+		MapRegion otherRegion = getRegion(otherRoom);
+		region.setDirty(true);
+		otherRegion.setDirty(true);
 		// TODO If fails to set exit, delete partway created exit.
 		room.setExit(direction, newExit);
 		otherRoom.setExit(Direction.oppositeDirection(direction), newExit);
+		mapChanged();
+
+		saveRooms(room, otherRoom);
+		regionSaved(region);
+		regionSaved(otherRegion);
 	}
 
 	/**
@@ -384,24 +1315,43 @@ public class GameMap {
 	 * @throws MapExceptionRoomNull              provided origin room is null
 	 * @throws MapExceptionExitRoomNull          could not find room in supplied
 	 *                                           direction
-	 * @throws MapExceptionDirectionNotSupported direction not supported by method
 	 * @throws CheckedHibernateException         hibernate exception
 	 */
-	public void deleteExit(Room room, Direction.DIRECTION direction) throws MapExceptionRoomNull,
-			MapExceptionExitRoomNull, MapExceptionDirectionNotSupported, CheckedHibernateException {
+	public void deleteExit(Room room, Direction.DIRECTION direction)
+			throws MapExceptionRoomNull, MapExceptionExitRoomNull, CheckedHibernateException {
 		if (room == null) {
 			throw new MapExceptionRoomNull("GameMap: Tried to remove exit on null room.");
 		}
+		List<MapRegion> locked = lockExitRegions(room, direction);
+		try {
+			deleteExitLocked(room, direction);
+		} finally {
+			unlockRegions(locked);
+		}
+	}
+
+	private void deleteExitLocked(Room room, Direction.DIRECTION direction)
+			throws MapExceptionRoomNull, MapExceptionExitRoomNull, CheckedHibernateException {
+		if (room.getPosition() == null) {
+			throw new MapExceptionRoomNull("GameMap: Tried to remove exit on a deleted room.");
+		}
 
 		Room otherRoom = getRoom(room, direction);
 		if (otherRoom == null) {
 			throw new MapExceptionExitRoomNull("GameMap: Tried to remove exit to a null room.");
 		}
 
+		MapRegion region = getRegion(room);
+		MapRegion otherRegion = getRegion(otherRoom);
+		region.setDirty(true);
+		otherRegion.setDirty(true);
 		room.setExit(direction, null);
 		otherRoom.setExit(Direction.oppositeDirection(direction), null);
+		mapChanged();
 
-		saveMap(this);
+		saveRooms(room, otherRoom);
+		regionSaved(region);
+		regionSaved(otherRegion);
 	}
 
 	/**
@@ -419,7 +1369,69 @@ public class GameMap {
 	}
 
 	/**
-	 * Persists the provided {@link GameMap} into the database.
+	 * Creates a new instance {@link GameMap} of the template map. Its Rooms are
+	 * copied from the template as they are looked up, so this takes the same
+	 * short time whatever the size of the template. Unless persistent, the
+	 * instance is never saved and takes no ids; a persistent instance is saved,
+	 * along with any Rooms changed or entered by players, and after a restart
+	 * copies the rest from the template again. Persistent instances need
+	 * {@link COORDINATE_MODE#EMBEDDED}, so are created in memory only otherwise.
+	 * Use {@link GameWorld#createInstance(GameMap, String, boolean)} to create an
+	 * instance in the game world.
+	 *
+	 * @param template   map to copy
+	 * @param name       name to set on the instance
+	 * @param persistent true to save the instance
+	 * @return new instance map
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public static GameMap createInstance(GameMap template, String name, boolean persistent)
+			throws CheckedHibernateException {
+		if (persistent && (coordinateMode != COORDINATE_MODE.EMBEDDED)) {
+			MyLogger.log(Level.WARNING, String.format(
+					"GameMap: Persistent instances need coordinate mode EMBEDDED, creating '%s' in memory only.", name));
+			persistent = false;
+		}
+
+		GameMap instance = new GameMap(name, template,
+				persistent ? IDSequenceGenerator.getNextID("GameMap") : transientIds.decrementAndGet());
+		Room templateSpawn = template.getSpawnRoom();
+		if (templateSpawn != null) {
+			RoomPosition position = templateSpawn.getPosition();
+			instance.spawnRoom = instance.getRoom(position.getX(), position.getY(), position.getZ());
+		}
+
+		if (persistent) {
+			if (instance.spawnRoom != null) {
+				instance.materializeRoom(instance.spawnRoom);
+			}
+			saveMap(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Creates a new wilderness {@link GameMap}, with Rooms generated from the
+	 * given seed, and persists its spawn room at 0, 0, 0. Must be called in
+	 * {@link COORDINATE_MODE#EMBEDDED}.
+	 *
+	 * @param name name to set on new map
+	 * @param seed seed of the map's {@link WildernessGenerator}
+	 * @return new wilderness map if successful
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public static GameMap createWilderness(String name, long seed) throws CheckedHibernateException {
+		GameMap newMap = new GameMap(name);
+		newMap.wildernessSeed = seed;
+
+		saveMap(newMap);
+		newMap.setSpawnRoom(newMap.getRoom(0, 0, 0));
+		return newMap;
+	}
+
+	/**
+	 * Persists the provided {@link GameMap} into the database, with the next
+	 * {@link WriteBehindQueue} flush if write-behind is enabled.
 	 * 
 	 * TODO Have map save iterate through room array and save all rooms
 	 *
@@ -427,6 +1439,21 @@ public class GameMap {
 	 * @throws CheckedHibernateException hibernate exception
 	 */
 	public static void saveMap(GameMap gameMap) throws CheckedHibernateException {
+		if (gameMap.isTransient()) {
+			return;
+		}
+		MapBatch batch = MapBatch.current(gameMap);
+		if (batch != null) {
+			batch.mapChanged();
+			return;
+		}
+		if (WriteBehindQueue.isEnabled()) {
+			// Changed Rooms are queued on their own as they are saved, so only the map
+			// itself (cascading to its Rooms in TABLE mode).
+			WriteBehindQueue.markDirty(gameMap);
+			return;
+		}
+
 		org.hibernate.Session hibSess = null;
 		Transaction tx = null;
 
@@ -435,8 +1462,18 @@ public class GameMap {
 			tx = hibSess.beginTransaction();
 
 			hibSess.saveOrUpdate(gameMap);
+			if (coordinateMode == COORDINATE_MODE.EMBEDDED) {
+				// Rooms are not cascaded to through rooms in this mode. Unchanged generated Rooms
+				// are not persisted.
+				for (Room room : gameMap.getRooms()) {
+					if (!room.isGenerated()) {
+						hibSess.saveOrUpdate(room);
+					}
+				}
+			}
 
 			tx.commit();
+			gameMap.regionsSaved();
 		} catch (HibernateException e) {
 			if (tx != null) {
 				tx.rollback();
@@ -450,169 +1487,341 @@ public class GameMap {
 	}
 
 	/**
-	 * Generates an output object with a visual display of the {@link GameMap}
-	 * surrounding the given {@link Room}.
+	 * Returns the {@link MapRegion} containing the given position, creating it if
+	 * needed.
 	 *
-	 * @param output Existing output object to append to, if any
-	 * @param room   Room around which to display map
-	 * @param radius Number of rooms in each direction to display
-	 * @return ClientConnectionOutput with appended display map lines
+	 * @param position position of a room in the GameMap
+	 * @return region containing the position
 	 */
-	public static ClientConnectionOutput displayMap(Room room, int radius) {
-		ClientConnectionOutput output = new ClientConnectionOutput();
-
-		class Line_Builder {
-			public ClientConnectionOutput buildLines(ClientConnectionOutput output, GameMap gameMap, int lineX,
-					int lineY, int lineZ, int lineSize) {
-				String lineTop = "";
-				String lineMid = "";
-				String lineBot = "";
-
-				for (int i = lineX - lineSize; i <= (lineX + lineSize); i++) {
-					Room foundRoom;
-					foundRoom = gameMap.getRoom(i, lineY, lineZ);
-
-					if (foundRoom == null) {
-						lineTop = lineTop + "     ";
-						lineMid = lineMid + "  *  ";
-						lineBot = lineBot + "     ";
-					} else {
-						String u = "]";
-						String d = "[";
-						String nw = " ";
-						String n = " ";
-						String ne = " ";
-						String w = " ";
-						String center = " ";
-						String e = " ";
-						String sw = " ";
-						String s = " ";
-						String se = " ";
-
-						try {
-							if (foundRoom.getExit(Direction.DIRECTION.UP) != null) {
-								u = "^";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.DOWN) != null) {
-								d = "v";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.NORTHWEST) != null) {
-								nw = "\\";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.NORTH) != null) {
-								n = "|";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.NORTHEAST) != null) {
-								ne = "/";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.WEST) != null) {
-								w = "-";
-							}
-							if (foundRoom == room) {
-								center = "x";
-							} else if (!foundRoom.getPlayers().isEmpty()) {
-								center = "o";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.EAST) != null) {
-								e = "-";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.SOUTHWEST) != null) {
-								sw = "/";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.SOUTH) != null) {
-								s = "|";
-							}
-							if (foundRoom.getExit(Direction.DIRECTION.SOUTHEAST) != null) {
-								se = "\\";
-							}
-						} catch (MapExceptionDirectionNotSupported e2) {
-							MyLogger.log(Level.WARNING, "GameMap: MapExceptionDirectionNotSupported while displayMap.",
-									e2);
-						}
+	public MapRegion getRegion(RoomPosition position) {
+		return getRegion(position.getX(), position.getY(), position.getZ());
+	}
 
-						lineTop = lineTop + nw + " " + n + " " + ne;
-						lineMid = lineMid + w + d + center + u + e;
-						lineBot = lineBot + sw + " " + s + " " + se;
-					}
-				}
+	private MapRegion getRegion(int x, int y, int z) {
+		return regions.getOrCreate(Math.floorDiv(x, MapRegion.REGION_SIZE), Math.floorDiv(y, MapRegion.REGION_SIZE), z);
+	}
 
-				output.newLine();
-				output.addPart(lineTop, null, null);
-				output.newLine();
-				output.addPart(lineMid, null, null);
-				output.newLine();
-				output.addPart(lineBot, null, null);
+	/**
+	 * @return the {@link MapRegion} containing the position, or null if none has
+	 *         been created yet, without creating one
+	 */
+	private MapRegion findRegion(int x, int y, int z) {
+		return regions.get(Math.floorDiv(x, MapRegion.REGION_SIZE), Math.floorDiv(y, MapRegion.REGION_SIZE), z);
+	}
 
-				return output;
-			}
+	/**
+	 * @param room room in the GameMap
+	 * @return the {@link MapRegion} containing the {@link Room}, or null if it has
+	 *         no position
+	 */
+	public MapRegion getRegion(Room room) {
+		RoomPosition position = room.getPosition();
+		if (position == null) {
+			return null;
 		}
+		return getRegion(position);
+	}
 
-		GameMap gameMap = room.getMap();
+	/**
+	 * Locks the {@link MapRegion}s holding the box between the two positions
+	 * (inclusive), in lock order, for a change to the Rooms or exits in it.
+	 *
+	 * @see #lockRegions(int, int, int, int, int, int, int)
+	 */
+	private List<MapRegion> lockRegions(RoomPosition from, RoomPosition to, int margin) {
+		return lockRegions(from.getX(), from.getY(), from.getZ(), to.getX(), to.getY(), to.getZ(), margin);
+	}
 
-		output.newLine();
-		output.addPart(String.format("Map around \"%s\" %s with radius %s", room.getName(), room.getCoord().toString(),
-				radius), null, null);
+	/**
+	 * Locks the {@link MapRegion}s holding the box between the two corners
+	 * (inclusive), widened by margin rooms on every side, for a change to the
+	 * Rooms or exits in it. Regions are locked in lock order through
+	 * {@link MapRegion#acquire(MapRegion)}, so this may be called holding the
+	 * region of the Character making the change. Regions already held by the
+	 * current thread are left as they are. Everything the change depends on must
+	 * be checked after locking.
+	 *
+	 * @return regions newly locked, to be passed to {@link #unlockRegions(List)}
+	 */
+	private List<MapRegion> lockRegions(int x1, int y1, int z1, int x2, int y2, int z2, int margin) {
+		int minZ = clampInt((long) Math.min(z1, z2) - margin);
+		int maxZ = clampInt((long) Math.max(z1, z2) + margin);
+		int minRegionX = Math.floorDiv(clampInt((long) Math.min(x1, x2) - margin), MapRegion.REGION_SIZE);
+		int maxRegionX = Math.floorDiv(clampInt((long) Math.max(x1, x2) + margin), MapRegion.REGION_SIZE);
+		int minRegionY = Math.floorDiv(clampInt((long) Math.min(y1, y2) - margin), MapRegion.REGION_SIZE);
+		int maxRegionY = Math.floorDiv(clampInt((long) Math.max(y1, y2) + margin), MapRegion.REGION_SIZE);
+
+		// In lock order: z, then y, then x.
+		List<MapRegion> locked = new ArrayList<>();
+		for (long z = minZ; z <= maxZ; z++) {
+			for (long regionY = minRegionY; regionY <= maxRegionY; regionY++) {
+				for (long regionX = minRegionX; regionX <= maxRegionX; regionX++) {
+					MapRegion region = regions.getOrCreate((int) regionX, (int) regionY, (int) z);
+					if (!region.isHeldByCurrentThread()) {
+						MapRegion.acquire(region);
+						locked.add(region);
+					}
+				}
+			}
+		}
+		return locked;
+	}
 
-		Line_Builder lineBuilder = new Line_Builder();
+	/**
+	 * Locks the regions of the {@link Room} and of the Room in the direction off of
+	 * it.
+	 */
+	private List<MapRegion> lockExitRegions(Room room, Direction.DIRECTION direction) throws MapExceptionRoomNull {
+		RoomPosition position = room.getPosition();
+		if (position == null) {
+			throw new MapExceptionRoomNull("GameMap: Tried to change an exit of a deleted room.");
+		}
+		return lockRegions(position.getX(), position.getY(), position.getZ(),
+				xAdjustDirection(position.getX(), direction), yAdjustDirection(position.getY(), direction),
+				zAdjustDirection(position.getZ(), direction), 0);
+	}
 
-		for (int i = (room.getCoord().getY() + radius); i > (room.getCoord().getY() - radius - 1); i--) {
-			output = lineBuilder.buildLines(output, gameMap, room.getCoord().getX(), i, room.getCoord().getZ(), radius);
+	/**
+	 * Unlocks regions locked by {@link #lockRegions(int, int, int, int, int, int, int)}.
+	 */
+	private static void unlockRegions(List<MapRegion> locked) {
+		// Last locked first, as they are at the end of those held.
+		for (int i = locked.size() - 1; i >= 0; i--) {
+			MapRegion.release(locked.get(i));
 		}
-		output.newLine();
+	}
 
-		return output;
+	private static int clampInt(long value) {
+		return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, value));
 	}
 
 	/**
-	 * Returns x coordinate that occupies the given {@link Direction.DIRECTION} from
-	 * the supplied coordinate.
-	 *
-	 * @param x         x coordinates to adjust
-	 * @param direction direction to adjust for
-	 * @return int of new adjusted coordinate
-	 * @throws MapExceptionDirectionNotSupported direction not supported by method
+	 * @return new list of the {@link MapRegion}s with resident Rooms, with lazy
+	 *         region loading
 	 */
-	public static int xAdjustDirection(int x, Direction.DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		switch (direction) {
-		case UP: {
-			return (x + 0);
-		}
-		case DOWN: {
-			return (x + 0);
+	List<MapRegion> getResidentRegions() {
+		List<MapRegion> resident = new ArrayList<>();
+		for (MapRegion region : regions.values()) {
+			if (region.isResident()) {
+				resident.add(region);
+			}
 		}
-		case NORTHWEST: {
-			return (x - 1);
+		return resident;
+	}
+
+	/**
+	 * Clears the unsaved changes flag of the region once its changes are saved, or
+	 * when the open {@link MapBatch} commits. With write-behind the region stays
+	 * dirty until the queued saves are flushed.
+	 */
+	private void regionSaved(MapRegion region) {
+		MapBatch batch = MapBatch.current(this);
+		if (batch != null) {
+			batch.addDirtyRegion(region);
+			return;
 		}
-		case NORTH: {
-			return (x + 0);
+		if (WriteBehindQueue.isEnabled() && !isTransient()) {
+			region.writeQueued();
+			WriteBehindQueue.afterFlush(region::writeFlushed);
 		}
-		case NORTHEAST: {
-			return (x + 1);
+		region.setDirty(false);
+	}
+
+	/**
+	 * Clears the unsaved changes flag of every region, after the whole GameMap is
+	 * saved.
+	 */
+	private void regionsSaved() {
+		for (MapRegion region : regions.values()) {
+			region.setDirty(false);
 		}
-		case EAST: {
-			return (x + 1);
+	}
+
+	/**
+	 * Loads the {@link Room}s of the region if not yet resident, and marks it used.
+	 */
+	private void ensureRegionLoaded(MapRegion region) {
+		if (!region.isResident()) {
+			synchronized (region) {
+				if (!region.isResident()) {
+					loadRegion(region);
+				}
+			}
 		}
-		case SOUTHEAST: {
-			return (x + 1);
+		region.touch();
+	}
+
+	/**
+	 * Loads the positioned {@link Room}s of the region in their own Hibernate
+	 * Session, points them at this GameMap instance and indexes them. For a
+	 * wilderness map, Rooms are generated wherever none is persisted. Must be
+	 * called holding the region's monitor. On a Hibernate error the region is left
+	 * not resident, to be tried again on the next lookup.
+	 */
+	private void loadRegion(MapRegion region) {
+		org.hibernate.Session hibSess = null;
+		Transaction tx = null;
+		List<Room> roomList;
+
+		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
+			tx = hibSess.beginTransaction();
+
+			int minX = region.getRegionX() * MapRegion.REGION_SIZE;
+			int minY = region.getRegionY() * MapRegion.REGION_SIZE;
+			Query<?> query = hibSess.createQuery(
+					"FROM Room WHERE map = :map AND position.z = :z AND position.x BETWEEN :minX AND :maxX AND position.y BETWEEN :minY AND :maxY");
+			query.setParameter("map", this);
+			query.setParameter("z", region.getZ());
+			query.setParameter("minX", minX);
+			query.setParameter("maxX", (minX + MapRegion.REGION_SIZE) - 1);
+			query.setParameter("minY", minY);
+			query.setParameter("maxY", (minY + MapRegion.REGION_SIZE) - 1);
+
+			@SuppressWarnings("unchecked")
+			List<Room> foundRooms = (List<Room>) query.list();
+			roomList = foundRooms;
+
+			tx.commit();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
+			}
+			MyLogger.log(Level.SEVERE, String.format("GameMap: Hibernate error while trying to load %s.", region), e);
+			return;
+		} finally {
+			if (hibSess != null) {
+				hibSess.close();
+			}
 		}
-		case SOUTH: {
-			return (x + 0);
+
+		Room spawn = spawnRoom;
+		HashSet<RoomPosition> persistedPositions = new HashSet<>();
+		for (int i = 0; i < roomList.size(); i++) {
+			Room room = roomList.get(i);
+			if ((spawn != null) && (spawn.getId() == room.getId())) {
+				// Keep the instance the GameMap already refers to.
+				spawn.setPosition(room.getPosition());
+				roomList.set(i, spawn);
+			} else {
+				room.setMap(this);
+			}
+			persistedPositions.add(room.getPosition());
 		}
-		case SOUTHWEST: {
-			return (x - 1);
+
+		WildernessGenerator generator = getGenerator();
+		if (generator != null) {
+			int minX = region.getRegionX() * MapRegion.REGION_SIZE;
+			int minY = region.getRegionY() * MapRegion.REGION_SIZE;
+			for (int y = minY; y < (minY + MapRegion.REGION_SIZE); y++) {
+				for (int x = minX; x < (minX + MapRegion.REGION_SIZE); x++) {
+					if (!persistedPositions.contains(new RoomPosition(x, y, region.getZ()))) {
+						Room generated = generator.generateRoom(this, x, y, region.getZ());
+						if (generated != null) {
+							roomList.add(generated);
+						}
+					}
+				}
+			}
 		}
-		case WEST: {
-			return (x - 1);
+
+		synchronized (indexLock) {
+			ensureIndexes();
+			for (Room room : roomList) {
+				indexPosition(room, true);
+			}
 		}
-		default: {
-			MyLogger.log(Level.WARNING,
-					"GameMap: Failed to xAdjustDirection for direction: " + direction.toString() + ".");
-			throw new MapExceptionDirectionNotSupported(
-					"GameMap: xAdjustDirection missing case for direction " + direction.toString() + ".");
+		region.setRooms(roomList);
+		MapRegionCache.roomsLoaded(roomList.size());
+		pathFinder.roomsLoaded();
+
+		MyLogger.log(Level.FINE, String.format("GameMap: Loaded %s with %d room(s).", region, roomList.size()));
+	}
+
+	/**
+	 * Evicts the resident {@link Room}s of the region, if it is not locked by a
+	 * command, has no players in it and has no unsaved changes.
+	 *
+	 * @param region resident region of the GameMap
+	 * @return number of Rooms evicted, or -1 if the region was not evicted
+	 */
+	int evictRegion(MapRegion region) {
+		if (!region.tryLock()) {
+			return -1;
 		}
+		try {
+			synchronized (region) {
+				if (!region.isResident() || region.isDirty() || region.hasPlayers()) {
+					return -1;
+				}
+
+				List<Room> roomList = region.evictRooms();
+				synchronized (indexLock) {
+					ensureIndexes();
+					for (Room room : roomList) {
+						if (room.getPosition() != null) {
+							unindexPosition(room, room.getPosition());
+						}
+					}
+					region.trimIndex();
+				}
+				MapRegionCache.roomsEvicted(roomList.size());
+				renderer.invalidateRegion(region);
+				return roomList.size();
+			}
+		} finally {
+			region.unlock();
 		}
 	}
 
+	/**
+	 * Drops everything cached from the rooms and exits of the GameMap, after they
+	 * change.
+	 */
+	private void mapChanged() {
+		renderer.invalidate();
+		pathFinder.invalidate();
+	}
+
+	/**
+	 * @return the {@link PathFinder} of the GameMap
+	 */
+	public PathFinder getPathFinder() {
+		return pathFinder;
+	}
+
+	/**
+	 * @return the {@link MapRenderer} of the GameMap
+	 */
+	public MapRenderer getRenderer() {
+		return renderer;
+	}
+
+	/**
+	 * Generates an output object with a visual display of the {@link GameMap}
+	 * surrounding the given {@link Room}. See {@link MapRenderer}.
+	 *
+	 * @param room   Room around which to display map
+	 * @param radius Number of rooms in each direction to display, capped at
+	 *               {@link MapRenderer#getMaxRadius()}
+	 * @return ClientConnectionOutput with display map lines
+	 */
+	public static ClientConnectionOutput displayMap(Room room, int radius) {
+		return room.getMap().getRenderer().render(room, radius);
+	}
+
+	/**
+	 * Returns x coordinate that occupies the given {@link Direction.DIRECTION} from
+	 * the supplied coordinate.
+	 *
+	 * @param x         x coordinates to adjust
+	 * @param direction direction to adjust for
+	 * @return int of new adjusted coordinate
+	 */
+	public static int xAdjustDirection(int x, Direction.DIRECTION direction) {
+		return x + direction.getDx();
+	}
+
 	/**
 	 * Returns y coordinate that occupies the given {@link Direction.DIRECTION} from
 	 * the supplied coordinate.
@@ -620,47 +1829,9 @@ public class GameMap {
 	 * @param y         y coordinates to adjust
 	 * @param direction direction to adjust for
 	 * @return int of new adjusted coordinate
-	 * @throws MapExceptionDirectionNotSupported direction not supported by method
 	 */
-	public static int yAdjustDirection(int y, Direction.DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		switch (direction) {
-		case UP: {
-			return (y + 0);
-		}
-		case DOWN: {
-			return (y + 0);
-		}
-		case NORTHWEST: {
-			return (y + 1);
-		}
-		case NORTH: {
-			return (y + 1);
-		}
-		case NORTHEAST: {
-			return (y + 1);
-		}
-		case EAST: {
-			return (y + 0);
-		}
-		case SOUTHEAST: {
-			return (y - 1);
-		}
-		case SOUTH: {
-			return (y - 1);
-		}
-		case SOUTHWEST: {
-			return (y - 1);
-		}
-		case WEST: {
-			return (y + 0);
-		}
-		default: {
-			MyLogger.log(Level.WARNING,
-					"GameMap: Failed to yAdjustDirection for direction: " + direction.toString() + ".");
-			throw new MapExceptionDirectionNotSupported(
-					"GameMap: yAdjustDirection missing case for direction " + direction.toString() + ".");
-		}
-		}
+	public static int yAdjustDirection(int y, Direction.DIRECTION direction) {
+		return y + direction.getDy();
 	}
 
 	// TODO Should probably move the coordinate manipulation stuff into Coordinate
@@ -672,47 +1843,9 @@ public class GameMap {
 	 * @param z         z coordinates to adjust
 	 * @param direction direction to adjust for
 	 * @return int of new adjusted coordinate
-	 * @throws MapExceptionDirectionNotSupported direction not supported by method
 	 */
-	public static int zAdjustDirection(int z, Direction.DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		switch (direction) {
-		case UP: {
-			return (z + 1);
-		}
-		case DOWN: {
-			return (z - 1);
-		}
-		case NORTHWEST: {
-			return (z + 0);
-		}
-		case NORTH: {
-			return (z + 0);
-		}
-		case NORTHEAST: {
-			return (z + 0);
-		}
-		case EAST: {
-			return (z + 0);
-		}
-		case SOUTHEAST: {
-			return (z + 0);
-		}
-		case SOUTH: {
-			return (z + 0);
-		}
-		case SOUTHWEST: {
-			return (z + 0);
-		}
-		case WEST: {
-			return (z + 0);
-		}
-		default: {
-			MyLogger.log(Level.WARNING,
-					"GameMap: Failed to zAdjustDirection for direction: " + direction.toString() + ".");
-			throw new MapExceptionDirectionNotSupported(
-					"GameMap: zAdjustDirection missing case for direction " + direction.toString() + ".");
-		}
-		}
+	public static int zAdjustDirection(int z, Direction.DIRECTION direction) {
+		return z + direction.getDz();
 	}
 
 	/**
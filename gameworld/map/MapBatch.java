@@ -0,0 +1,221 @@
+package fireengine.gameworld.map;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Transaction;
+
+import fireengine.gameworld.map.room.Room;
+import fireengine.main.FireEngineMain;
+import fireengine.util.CheckedHibernateException;
+import fireengine.util.WriteBehindQueue;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapBatch.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Collects the saves of a {@link GameMap} made by the current thread, so a
+ * series of edits is persisted in one transaction instead of one (or several)
+ * per edit.
+ *
+ * <p>
+ * While a batch is open, the GameMap's room, exit and map saves only record
+ * what changed, and {@link #commit()} then saves each changed {@link Room} and
+ * {@link Coordinate}, and the GameMap if needed, once. The regions of the
+ * changed Rooms stay marked as having unsaved changes until then, so they are
+ * not evicted. With write-behind enabled, the changes are queued in the
+ * {@link WriteBehindQueue} together instead, so are still saved in one
+ * transaction, in order with changes queued before. Batches are started with
+ * {@link GameMap#beginBatch()}; see
+ * {@link GameMap#fillRooms(RoomPosition, RoomPosition)} for an example.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class MapBatch {
+	private static final ThreadLocal<MapBatch> currentBatch = new ThreadLocal<>();
+
+	private final GameMap gameMap;
+	/**
+	 * Changed Rooms in order, without repeats. Kept by identity, as generated
+	 * Rooms change id when first saved.
+	 */
+	private final List<Room> changedRooms = new ArrayList<>();
+	private final IdentityHashMap<Room, Boolean> changedRoomSet = new IdentityHashMap<>();
+	private final List<Coordinate> newCoords = new ArrayList<>();
+	private final List<Coordinate> deletedCoords = new ArrayList<>();
+	private final IdentityHashMap<MapRegion, Boolean> dirtyRegions = new IdentityHashMap<>();
+	private boolean mapChanged;
+
+	private MapBatch(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * Opens a batch for the GameMap on the current thread.
+	 *
+	 * @throws IllegalStateException if the thread already has a batch open
+	 */
+	static MapBatch begin(GameMap gameMap) {
+		if (currentBatch.get() != null) {
+			throw new IllegalStateException("MapBatch: A batch is already open on this thread.");
+		}
+		MapBatch batch = new MapBatch(gameMap);
+		currentBatch.set(batch);
+		return batch;
+	}
+
+	/**
+	 * @param gameMap GameMap being saved
+	 * @return the batch open on the current thread for the GameMap, or null
+	 */
+	static MapBatch current(GameMap gameMap) {
+		MapBatch batch = currentBatch.get();
+		if ((batch == null) || (batch.gameMap != gameMap)) {
+			return null;
+		}
+		return batch;
+	}
+
+	void addRooms(Room... rooms) {
+		for (Room room : rooms) {
+			if (changedRoomSet.put(room, Boolean.TRUE) == null) {
+				changedRooms.add(room);
+			}
+		}
+	}
+
+	/**
+	 * Drops a generated Room deleted within the batch, as it was never persisted.
+	 */
+	void removeRoom(Room room) {
+		if (changedRoomSet.remove(room) != null) {
+			changedRooms.remove(room);
+		}
+	}
+
+	void addCoord(Coordinate coord) {
+		newCoords.add(coord);
+	}
+
+	void deleteCoord(Coordinate coord) {
+		if (!newCoords.remove(coord)) {
+			deletedCoords.add(coord);
+		}
+	}
+
+	void addDirtyRegion(MapRegion region) {
+		dirtyRegions.put(region, Boolean.TRUE);
+	}
+
+	void mapChanged() {
+		mapChanged = true;
+	}
+
+	/**
+	 * @return number of Rooms changed in the batch so far
+	 */
+	public int getChangedRoomCount() {
+		return changedRooms.size();
+	}
+
+	/**
+	 * Closes the batch and persists everything changed in it in one transaction.
+	 * The batch is closed even if saving fails.
+	 *
+	 * @throws CheckedHibernateException hibernate exception
+	 */
+	public void commit() throws CheckedHibernateException {
+		if (currentBatch.get() == this) {
+			currentBatch.remove();
+		}
+		if (gameMap.isTransient()) {
+			return;
+		}
+
+		for (Room room : changedRooms) {
+			if (room.isGenerated()) {
+				room.assignId();
+			}
+		}
+
+		if (WriteBehindQueue.isEnabled()) {
+			List<Object> saved = new ArrayList<>(newCoords);
+			if (mapChanged) {
+				saved.add(gameMap);
+			}
+			saved.addAll(changedRooms);
+			for (MapRegion region : dirtyRegions.keySet()) {
+				region.writeQueued();
+			}
+			WriteBehindQueue.markAll(saved, deletedCoords, new Runnable() {
+				@Override
+				public void run() {
+					for (MapRegion region : dirtyRegions.keySet()) {
+						region.writeFlushed();
+					}
+				}
+			});
+			for (MapRegion region : dirtyRegions.keySet()) {
+				region.setDirty(false);
+			}
+			return;
+		}
+
+		org.hibernate.Session hibSess = null;
+		Transaction tx = null;
+
+		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
+			tx = hibSess.beginTransaction();
+
+			for (Coordinate coord : newCoords) {
+				hibSess.saveOrUpdate(coord);
+			}
+			if (mapChanged) {
+				hibSess.saveOrUpdate(gameMap);
+			}
+			for (Room room : changedRooms) {
+				hibSess.saveOrUpdate(room);
+			}
+			if (!deletedCoords.isEmpty()) {
+				// Mapping rows must be gone before the Coordinates they point at.
+				hibSess.flush();
+				for (Coordinate coord : deletedCoords) {
+					hibSess.delete(coord);
+				}
+			}
+
+			tx.commit();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
+			}
+			throw new CheckedHibernateException("MapBatch: Hibernate error while trying to commit.", e);
+		} finally {
+			if (hibSess != null) {
+				hibSess.close();
+			}
+		}
+
+		for (MapRegion region : dirtyRegions.keySet()) {
+			region.setDirty(false);
+		}
+	}
+}
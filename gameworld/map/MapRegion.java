@@ -0,0 +1,406 @@
+package fireengine.gameworld.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import fireengine.gameworld.map.room.Room;
+import fireengine.util.WriteBehindQueue;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapRegion.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * A fixed size block of a {@link GameMap}, {@link #REGION_SIZE} rooms square on
+ * one z level, with its own lock.
+ *
+ * <p>
+ * A command holds the lock of the region its character is in while it runs
+ * (see {@link #acquire(MapRegion)} and {@link #releaseAll()}), so commands
+ * in the same region take turns while commands in different regions run in
+ * parallel. Regions are always locked in a fixed order (map id, then z, y and
+ * x), and a move into another region goes through {@link #acquire(MapRegion)},
+ * which keeps to that order, so two moves between the same regions in
+ * opposite directions cannot deadlock. Map edits lock, the same way, every
+ * region whose Rooms or exits they check or change (see {@link GameMap}), so
+ * no player can walk into a Room between an edit checking it and changing it.
+ * </p>
+ *
+ * <p>
+ * Each region also holds the part of the GameMap's index of {@link Room}s by
+ * position that falls inside it, read without locking. With lazy region
+ * loading (see {@link MapRegionCache}) a region is also the unit in which
+ * Rooms are loaded and evicted, and keeps track of its Rooms while they are
+ * resident.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class MapRegion implements Comparable<MapRegion> {
+	/**
+	 * Width and height of a region, in rooms.
+	 */
+	public static final int REGION_SIZE = 32;
+
+	/**
+	 * Regions locked by the current thread, in lock order.
+	 */
+	private static final ThreadLocal<ArrayList<MapRegion>> heldRegions = new ThreadLocal<ArrayList<MapRegion>>() {
+		@Override
+		protected ArrayList<MapRegion> initialValue() {
+			return new ArrayList<>(2);
+		}
+	};
+
+	private final GameMap gameMap;
+	private final int regionX;
+	private final int regionY;
+	private final int z;
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/**
+	 * Indexed Rooms of the region, by position within it (see
+	 * {@link #indexSlot(int, int)}). Created with the first Room indexed. Read
+	 * without locking, and only changed holding the GameMap's index lock.
+	 */
+	private volatile AtomicReferenceArray<Room> roomIndex;
+
+	/**
+	 * Rooms of the region while resident, only kept with lazy region loading.
+	 * Guarded by this.
+	 */
+	private List<Room> rooms;
+	private volatile boolean resident;
+	/**
+	 * {@link System#nanoTime()} the region was last used.
+	 */
+	private volatile long lastUsed;
+	/**
+	 * Set while a change to the region's Rooms has not been persisted.
+	 */
+	private volatile boolean dirty;
+	/**
+	 * Number of saves of the region's Rooms queued in the {@link WriteBehindQueue}
+	 * and not yet flushed.
+	 */
+	private final AtomicInteger queuedWrites = new AtomicInteger();
+
+	MapRegion(GameMap gameMap, int regionX, int regionY, int z) {
+		this.gameMap = gameMap;
+		this.regionX = regionX;
+		this.regionY = regionY;
+		this.z = z;
+	}
+
+	public GameMap getGameMap() {
+		return gameMap;
+	}
+
+	int getRegionX() {
+		return regionX;
+	}
+
+	int getRegionY() {
+		return regionY;
+	}
+
+	int getZ() {
+		return z;
+	}
+
+	/**
+	 * @return true if the region's Rooms are loaded, with lazy region loading
+	 */
+	public boolean isResident() {
+		return resident;
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	void touch() {
+		lastUsed = System.nanoTime();
+	}
+
+	boolean isDirty() {
+		return dirty || (queuedWrites.get() > 0);
+	}
+
+	/**
+	 * Counts a save of the region's Rooms queued for write-behind; the region
+	 * counts as dirty until it is flushed.
+	 */
+	void writeQueued() {
+		queuedWrites.incrementAndGet();
+	}
+
+	void writeFlushed() {
+		queuedWrites.decrementAndGet();
+	}
+
+	void setDirty(boolean dirty) {
+		this.dirty = dirty;
+	}
+
+	private static int indexSlot(int x, int y) {
+		// Same as floorMod, as REGION_SIZE is a power of two.
+		return (x & (REGION_SIZE - 1)) + ((y & (REGION_SIZE - 1)) * REGION_SIZE);
+	}
+
+	/**
+	 * @param x x coordinate of a room in the region
+	 * @param y y coordinate of a room in the region
+	 * @return Room indexed at the position, or null
+	 */
+	Room getIndexedRoom(int x, int y) {
+		AtomicReferenceArray<Room> index = roomIndex;
+		return (index == null) ? null : index.get(indexSlot(x, y));
+	}
+
+	/**
+	 * Indexes the Room at the position. Must be called holding the GameMap's index
+	 * lock.
+	 *
+	 * @return Room indexed at the position before, or null
+	 */
+	Room indexRoom(int x, int y, Room room) {
+		AtomicReferenceArray<Room> index = roomIndex;
+		if (index == null) {
+			index = new AtomicReferenceArray<>(REGION_SIZE * REGION_SIZE);
+			roomIndex = index;
+		}
+		return index.getAndSet(indexSlot(x, y), room);
+	}
+
+	/**
+	 * Removes the Room from the index, if it is the one indexed at the position.
+	 * Must be called holding the GameMap's index lock.
+	 *
+	 * @return true if it was removed
+	 */
+	boolean unindexRoom(int x, int y, Room room) {
+		AtomicReferenceArray<Room> index = roomIndex;
+		return (index != null) && index.compareAndSet(indexSlot(x, y), room, null);
+	}
+
+	/**
+	 * Drops the index if no Room is indexed, as after the region is evicted. Must
+	 * be called holding the GameMap's index lock.
+	 */
+	void trimIndex() {
+		AtomicReferenceArray<Room> index = roomIndex;
+		if (index != null) {
+			for (int i = 0; i < index.length(); i++) {
+				if (index.get(i) != null) {
+					return;
+				}
+			}
+			roomIndex = null;
+		}
+	}
+
+	/**
+	 * Drops the whole index, before it is rebuilt. Must be called holding the
+	 * GameMap's index lock.
+	 */
+	void clearIndex() {
+		roomIndex = null;
+	}
+
+	/**
+	 * Adds the indexed Rooms of the region to the list.
+	 */
+	void addIndexedRooms(List<Room> roomList) {
+		AtomicReferenceArray<Room> index = roomIndex;
+		if (index != null) {
+			for (int i = 0; i < index.length(); i++) {
+				Room room = index.get(i);
+				if (room != null) {
+					roomList.add(room);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Marks the region resident with the given Rooms.
+	 */
+	synchronized void setRooms(List<Room> rooms) {
+		this.rooms = new ArrayList<>(rooms);
+		resident = true;
+		touch();
+	}
+
+	/**
+	 * Marks the region no longer resident.
+	 *
+	 * @return the Rooms that were resident
+	 */
+	synchronized List<Room> evictRooms() {
+		List<Room> evicted = rooms;
+		rooms = null;
+		resident = false;
+		return evicted;
+	}
+
+	synchronized void addRoom(Room room) {
+		if (rooms != null) {
+			rooms.add(room);
+		}
+	}
+
+	synchronized void removeRoom(Room room) {
+		if (rooms != null) {
+			rooms.remove(room);
+		}
+	}
+
+	/**
+	 * @return true if any resident Room of the region has a player in it
+	 */
+	synchronized boolean hasPlayers() {
+		if (rooms != null) {
+			for (Room room : rooms) {
+				if (room.hasPlayers()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Locks the region only if free, for work outside of any command such as
+	 * eviction. Does not take part in the lock order, so must not be used while
+	 * holding any other region.
+	 */
+	boolean tryLock() {
+		return lock.tryLock();
+	}
+
+	void unlock() {
+		lock.unlock();
+	}
+
+	/**
+	 * @return true if the current thread holds this region's lock
+	 */
+	public boolean isHeldByCurrentThread() {
+		return lock.isHeldByCurrentThread();
+	}
+
+	/**
+	 * Locks the region for the current thread, unless already held, keeping to
+	 * the lock order. If a region later in the order is already held and this one
+	 * is not free, those later regions are released, this one is locked, and they
+	 * are locked again after it. Anything read while holding them may then have
+	 * changed, which is reported by returning false.
+	 *
+	 * @param region region to lock
+	 * @return true if the regions already held were held throughout
+	 */
+	public static boolean acquire(MapRegion region) {
+		ArrayList<MapRegion> held = heldRegions.get();
+		if (region.lock.isHeldByCurrentThread()) {
+			return true;
+		}
+
+		int index = held.size();
+		// Map edits lock many regions in order, each after all those held.
+		if ((index > 0) && (held.get(index - 1).compareTo(region) > 0)) {
+			index = 0;
+			while ((index < held.size()) && (held.get(index).compareTo(region) < 0)) {
+				index++;
+			}
+		}
+
+		if ((index == held.size()) || region.lock.tryLock()) {
+			if (index == held.size()) {
+				region.lock.lock();
+			}
+			held.add(index, region);
+			return true;
+		}
+
+		// Back off: let go of the regions after this one in the order, then lock them
+		// again after it.
+		ArrayList<MapRegion> later = new ArrayList<>(held.subList(index, held.size()));
+		for (MapRegion laterRegion : later) {
+			laterRegion.lock.unlock();
+		}
+		region.lock.lock();
+		for (MapRegion laterRegion : later) {
+			laterRegion.lock.lock();
+		}
+		held.add(index, region);
+		return false;
+	}
+
+	/**
+	 * Unlocks the region, if held by the current thread.
+	 *
+	 * @param region region to unlock
+	 */
+	public static void release(MapRegion region) {
+		ArrayList<MapRegion> held = heldRegions.get();
+		int last = held.size() - 1;
+		if ((last >= 0) && (held.get(last) == region)) {
+			held.remove(last);
+			region.lock.unlock();
+		} else if (held.remove(region)) {
+			region.lock.unlock();
+		}
+	}
+
+	/**
+	 * Unlocks every region held by the current thread, at the end of a command.
+	 */
+	public static void releaseAll() {
+		ArrayList<MapRegion> held = heldRegions.get();
+		for (int i = held.size() - 1; i >= 0; i--) {
+			held.get(i).lock.unlock();
+		}
+		held.clear();
+	}
+
+	@Override
+	public int compareTo(MapRegion other) {
+		int result = Integer.compare(gameMap.getId(), other.gameMap.getId());
+		if (result == 0) {
+			result = Integer.compare(z, other.z);
+		}
+		if (result == 0) {
+			result = Integer.compare(regionY, other.regionY);
+		}
+		if (result == 0) {
+			result = Integer.compare(regionX, other.regionX);
+		}
+		if ((result == 0) && (this != other)) {
+			// Regions of copies of the same GameMap loaded in different sessions.
+			result = Integer.compare(System.identityHashCode(gameMap), System.identityHashCode(other.gameMap));
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s region (%d, %d, %d)", gameMap.getName(), regionX, regionY, z);
+	}
+}
@@ -0,0 +1,229 @@
+package fireengine.gameworld.map;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import fireengine.gameworld.GameWorld;
+import fireengine.gameworld.map.room.Room;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapRegionCache.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Settings and eviction for lazy region loading, where the {@link Room}s of a
+ * {@link GameMap} are loaded one {@link MapRegion} at a time, the first time a
+ * room in the region is looked up, instead of all at startup.
+ *
+ * <p>
+ * Only available in {@link GameMap.COORDINATE_MODE#EMBEDDED}, as Rooms can only
+ * be queried by position there. A timer evicts resident regions that have no
+ * players in them, no unsaved changes and have not been used for the
+ * mapRegionIdleSeconds setting. While more Rooms than the mapMaxResidentRooms
+ * setting are resident, the least recently used regions are evicted first
+ * regardless of the idle time.
+ * </p>
+ *
+ * <p>
+ * Wilderness GameMaps (see {@link WildernessGenerator}) are always loaded a
+ * region at a time, and evicted the same way, whether or not lazy region
+ * loading is enabled for other maps.
+ * </p>
+ *
+ * <p>
+ * Settings (server config file, all optional): mapLazyRegions,
+ * mapRegionIdleSeconds and mapMaxResidentRooms (0 for no limit).
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class MapRegionCache {
+	static final int DEFAULT_IDLE_SECONDS = 300;
+	static final int DEFAULT_MAX_RESIDENT_ROOMS = 100000;
+
+	private static final long EVICT_INTERVAL_SECONDS = 30;
+	/**
+	 * Regions used more recently than this are not evicted to meet the resident
+	 * room limit, as a command may be about to use them.
+	 */
+	private static final long MIN_IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private static boolean lazyRegions;
+	private static long idleNanos = TimeUnit.SECONDS.toNanos(DEFAULT_IDLE_SECONDS);
+	private static int maxResidentRooms = DEFAULT_MAX_RESIDENT_ROOMS;
+
+	private static final AtomicInteger residentRooms = new AtomicInteger();
+	private static final AtomicBoolean evictionQueued = new AtomicBoolean();
+	private static volatile ScheduledExecutorService evictionTimer;
+	private static boolean shutdown;
+
+	private MapRegionCache() {
+	}
+
+	/**
+	 * Loads lazy region loading settings and, if enabled, starts the eviction
+	 * timer. Must be called after {@link GameMap#setupCoordinateMode()} and before
+	 * any GameMap is loaded.
+	 */
+	public static void setupRegionCache() {
+		lazyRegions = Boolean.parseBoolean(ConfigLoader.getSetting("mapLazyRegions"));
+		if (lazyRegions && (GameMap.getCoordinateMode() != GameMap.COORDINATE_MODE.EMBEDDED)) {
+			MyLogger.log(Level.WARNING,
+					"MapRegionCache: mapLazyRegions needs mapCoordinateMode EMBEDDED, loading whole maps instead.");
+			lazyRegions = false;
+		}
+		idleNanos = TimeUnit.SECONDS.toNanos(Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("mapRegionIdleSeconds"), DEFAULT_IDLE_SECONDS)));
+		maxResidentRooms = Math.max(0,
+				MathUtils.parseInt(ConfigLoader.getSetting("mapMaxResidentRooms"), DEFAULT_MAX_RESIDENT_ROOMS));
+
+		if (!lazyRegions) {
+			MyLogger.log(Level.INFO, "MapRegionCache: Loading whole maps at startup.");
+			return;
+		}
+
+		startEviction();
+		MyLogger.log(Level.INFO,
+				String.format(
+						"MapRegionCache: Loading map regions on demand, evicting after %ds idle, at most %d resident room(s).",
+						TimeUnit.NANOSECONDS.toSeconds(idleNanos), maxResidentRooms));
+	}
+
+	/**
+	 * Starts the eviction timer, if not already started.
+	 */
+	private static synchronized void startEviction() {
+		if ((evictionTimer != null) || shutdown) {
+			return;
+		}
+
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+		timer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				evictRegions();
+			}
+		}, EVICT_INTERVAL_SECONDS, EVICT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+		evictionTimer = timer;
+	}
+
+	/**
+	 * Stops the eviction timer, typically on application shutdown.
+	 */
+	public static synchronized void shutdownRegionCache() {
+		shutdown = true;
+		if (evictionTimer != null) {
+			evictionTimer.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return true if Rooms are loaded one {@link MapRegion} at a time
+	 */
+	public static boolean isLazy() {
+		return lazyRegions;
+	}
+
+	/**
+	 * @return number of Rooms resident in lazily loaded regions
+	 */
+	public static int getResidentRooms() {
+		return residentRooms.get();
+	}
+
+	/**
+	 * Counts Rooms loaded with a region, starting the eviction timer if needed
+	 * (for wilderness maps) and queueing an eviction run if that takes the
+	 * resident Rooms over the limit.
+	 */
+	static void roomsLoaded(int count) {
+		if (evictionTimer == null) {
+			startEviction();
+		}
+		int resident = residentRooms.addAndGet(count);
+		ScheduledExecutorService timer = evictionTimer;
+		if ((maxResidentRooms > 0) && (resident > maxResidentRooms) && (timer != null)
+				&& evictionQueued.compareAndSet(false, true)) {
+			timer.execute(new Runnable() {
+				@Override
+				public void run() {
+					evictionQueued.set(false);
+					evictRegions();
+				}
+			});
+		}
+	}
+
+	static void roomsEvicted(int count) {
+		residentRooms.addAndGet(-count);
+	}
+
+	/**
+	 * Evicts idle regions of every loaded {@link GameMap}, least recently used
+	 * first, and then further regions while over the resident room limit.
+	 */
+	static void evictRegions() {
+		try {
+			List<MapRegion> candidates = new ArrayList<>();
+			for (GameMap gameMap : GameWorld.getMaps()) {
+				candidates.addAll(gameMap.getResidentRegions());
+			}
+			candidates.sort(Comparator.comparingLong(MapRegion::getLastUsed));
+
+			long now = System.nanoTime();
+			int evictedRegions = 0;
+			int evictedRooms = 0;
+			for (MapRegion region : candidates) {
+				long idle = now - region.getLastUsed();
+				boolean overLimit = (maxResidentRooms > 0) && (residentRooms.get() > maxResidentRooms);
+				if ((idle < idleNanos) && (!overLimit || (idle < MIN_IDLE_NANOS))) {
+					// The rest were used more recently still.
+					break;
+				}
+
+				int evicted = region.getGameMap().evictRegion(region);
+				if (evicted >= 0) {
+					evictedRegions++;
+					evictedRooms += evicted;
+				}
+			}
+
+			if (evictedRegions > 0) {
+				MyLogger.log(Level.FINE,
+						String.format("MapRegionCache: Evicted %d region(s) with %d room(s), %d room(s) resident.",
+								evictedRegions, evictedRooms, residentRooms.get()));
+			}
+			if ((maxResidentRooms > 0) && (residentRooms.get() > maxResidentRooms)) {
+				MyLogger.log(Level.WARNING,
+						String.format("MapRegionCache: %d room(s) resident, over the limit of %d, as regions are in use.",
+								residentRooms.get(), maxResidentRooms));
+			}
+		} catch (RuntimeException e) {
+			// Keep the timer running.
+			MyLogger.log(Level.SEVERE, "MapRegionCache: Exception while evicting regions.", e);
+		}
+	}
+}
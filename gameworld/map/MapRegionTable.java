@@ -0,0 +1,129 @@
+package fireengine.gameworld.map;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapRegionTable.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * The {@link MapRegion}s of a {@link GameMap}, found by region coordinates
+ * without allocating a key object. An open addressing table matched against
+ * each region's own coordinates. Lookups read without locking; regions are
+ * only added, never removed, holding this table's monitor.
+ *
+ * @author Ben Hook
+ */
+class MapRegionTable {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final GameMap gameMap;
+	/**
+	 * Replaced, never resized in place, so a lookup probes a consistent table.
+	 */
+	private volatile AtomicReferenceArray<MapRegion> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+	/**
+	 * Guarded by this.
+	 */
+	private int size;
+
+	MapRegionTable(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * @return the {@link MapRegion} at the region coordinates (in regions, not
+	 *         rooms), or null if none has been created yet
+	 */
+	MapRegion get(int regionX, int regionY, int z) {
+		AtomicReferenceArray<MapRegion> current = table;
+		int mask = current.length() - 1;
+		for (int slot = hash(regionX, regionY, z) & mask;; slot = (slot + 1) & mask) {
+			MapRegion region = current.get(slot);
+			if (region == null) {
+				return null;
+			}
+			if ((region.getRegionX() == regionX) && (region.getRegionY() == regionY) && (region.getZ() == z)) {
+				return region;
+			}
+		}
+	}
+
+	/**
+	 * @return the {@link MapRegion} at the region coordinates (in regions, not
+	 *         rooms), creating it if needed
+	 */
+	MapRegion getOrCreate(int regionX, int regionY, int z) {
+		MapRegion region = get(regionX, regionY, z);
+		if (region != null) {
+			return region;
+		}
+		synchronized (this) {
+			region = get(regionX, regionY, z);
+			if (region != null) {
+				return region;
+			}
+			region = new MapRegion(gameMap, regionX, regionY, z);
+			AtomicReferenceArray<MapRegion> current = table;
+			if (((size + 1) * 2) > current.length()) {
+				AtomicReferenceArray<MapRegion> grown = new AtomicReferenceArray<>(current.length() * 2);
+				for (int i = 0; i < current.length(); i++) {
+					MapRegion existing = current.get(i);
+					if (existing != null) {
+						insert(grown, existing);
+					}
+				}
+				insert(grown, region);
+				table = grown;
+			} else {
+				insert(current, region);
+			}
+			size++;
+			return region;
+		}
+	}
+
+	/**
+	 * @return new list of all {@link MapRegion}s created so far
+	 */
+	List<MapRegion> values() {
+		AtomicReferenceArray<MapRegion> current = table;
+		List<MapRegion> regionList = new ArrayList<>();
+		for (int i = 0; i < current.length(); i++) {
+			MapRegion region = current.get(i);
+			if (region != null) {
+				regionList.add(region);
+			}
+		}
+		return regionList;
+	}
+
+	private static void insert(AtomicReferenceArray<MapRegion> target, MapRegion region) {
+		int mask = target.length() - 1;
+		int slot = hash(region.getRegionX(), region.getRegionY(), region.getZ()) & mask;
+		while (target.get(slot) != null) {
+			slot = (slot + 1) & mask;
+		}
+		target.set(slot, region);
+	}
+
+	private static int hash(int regionX, int regionY, int z) {
+		int hash = (regionX * 0x9E3779B1) ^ (regionY * 0x85EBCA77) ^ (z * 0xC2B2AE3D);
+		return hash ^ (hash >>> 16);
+	}
+}
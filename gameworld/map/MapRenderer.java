@@ -0,0 +1,322 @@
+package fireengine.gameworld.map;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.gameworld.map.room.Room;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    MapRenderer.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Renders the ASCII map of a {@link GameMap} around a {@link Room}.
+ *
+ * <p>
+ * Each room is drawn as a cell of three lines of five characters, taken from a
+ * table of cell glyphs by exit mask. The exits part of a view (the rooms and
+ * their glyphs) is cached per centre and radius, and the cache is invalidated
+ * whenever rooms or exits of the GameMap change. Views over a
+ * {@link MapRegion} are also dropped when it is evicted, as they hold its
+ * Rooms; loading a region needs nothing dropped, as building a view over it
+ * loads it. Only the dynamic markers, "x"
+ * for the centre room and "o" for rooms with players, are drawn per request.
+ * The radius is capped by the mapMaxRadius setting.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class MapRenderer {
+	static final int DEFAULT_MAX_RADIUS = 10;
+	/**
+	 * Number of views cached per GameMap.
+	 */
+	private static final int CACHED_VIEWS = 64;
+
+	private static final int CELL_WIDTH = 5;
+	private static final int CELL_HEIGHT = 3;
+	private static final char[] EMPTY_CELL = "       *       ".toCharArray();
+	/**
+	 * Cell glyphs by exit mask (see {@link Room#getExitMask()}), three lines of
+	 * {@link #CELL_WIDTH} characters each, with the centre left blank.
+	 */
+	private static final char[][] CELL_GLYPHS = buildCellGlyphs();
+
+	private static int maxRadius = DEFAULT_MAX_RADIUS;
+
+	/**
+	 * Per thread grid the markers are drawn into, grown as needed.
+	 */
+	private static final ThreadLocal<char[]> gridBuffer = new ThreadLocal<>();
+
+	private final GameMap gameMap;
+	/**
+	 * Changed whenever rooms or exits of the GameMap change, so views rendered
+	 * before then are no longer used.
+	 */
+	private volatile int version;
+	/**
+	 * Changed whenever a region is evicted. Guarded by views.
+	 */
+	private int regionEvictions;
+	/**
+	 * Least recently used cache of views. Guarded by itself.
+	 */
+	private final LinkedHashMap<ViewKey, View> views = new LinkedHashMap<ViewKey, View>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(java.util.Map.Entry<ViewKey, View> eldest) {
+			return size() > CACHED_VIEWS;
+		}
+	};
+
+	/**
+	 * Centre and radius of a view.
+	 */
+	private static final class ViewKey {
+		final RoomPosition centre;
+		final int radius;
+
+		ViewKey(RoomPosition centre, int radius) {
+			this.centre = centre;
+			this.radius = radius;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * centre.hashCode()) + radius;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ViewKey)) {
+				return false;
+			}
+			ViewKey other = (ViewKey) obj;
+			return (radius == other.radius) && centre.equals(other.centre);
+		}
+	}
+
+	/**
+	 * Rendered exits of a view, without markers. Never modified once built.
+	 */
+	private static final class View {
+		final int version;
+		final int cellsPerLine;
+		final Room[] rooms;
+		final char[] grid;
+
+		View(int version, int cellsPerLine, Room[] rooms, char[] grid) {
+			this.version = version;
+			this.cellsPerLine = cellsPerLine;
+			this.rooms = rooms;
+			this.grid = grid;
+		}
+	}
+
+	MapRenderer(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * Loads the maximum map radius from the server config.
+	 */
+	public static void setupRenderer() {
+		maxRadius = Math.max(0, MathUtils.parseInt(ConfigLoader.getSetting("mapMaxRadius"), DEFAULT_MAX_RADIUS));
+		MyLogger.log(Level.INFO, String.format("MapRenderer: Maximum map radius %d.", maxRadius));
+	}
+
+	public static int getMaxRadius() {
+		return maxRadius;
+	}
+
+	/**
+	 * @param radius requested radius
+	 * @return radius limited to between 0 and the maximum radius
+	 */
+	public static int clampRadius(int radius) {
+		return Math.max(0, Math.min(radius, maxRadius));
+	}
+
+	private static char[][] buildCellGlyphs() {
+		int directions = Direction.DIRECTION.values().length;
+		char[][] glyphs = new char[1 << directions][];
+
+		for (int mask = 0; mask < glyphs.length; mask++) {
+			char[] cell = "               ".toCharArray();
+			cell[0] = glyphChar(mask, Direction.DIRECTION.NORTHWEST, '\\');
+			cell[2] = glyphChar(mask, Direction.DIRECTION.NORTH, '|');
+			cell[4] = glyphChar(mask, Direction.DIRECTION.NORTHEAST, '/');
+			cell[5] = glyphChar(mask, Direction.DIRECTION.WEST, '-');
+			cell[6] = ((mask & (1 << Direction.DIRECTION.DOWN.ordinal())) != 0) ? 'v' : '[';
+			cell[8] = ((mask & (1 << Direction.DIRECTION.UP.ordinal())) != 0) ? '^' : ']';
+			cell[9] = glyphChar(mask, Direction.DIRECTION.EAST, '-');
+			cell[10] = glyphChar(mask, Direction.DIRECTION.SOUTHWEST, '/');
+			cell[12] = glyphChar(mask, Direction.DIRECTION.SOUTH, '|');
+			cell[14] = glyphChar(mask, Direction.DIRECTION.SOUTHEAST, '\\');
+			glyphs[mask] = cell;
+		}
+		return glyphs;
+	}
+
+	private static char glyphChar(int mask, Direction.DIRECTION direction, char exitChar) {
+		return ((mask & (1 << direction.ordinal())) != 0) ? exitChar : ' ';
+	}
+
+	/**
+	 * Drops all cached views, for when rooms or exits of the GameMap change.
+	 */
+	public void invalidate() {
+		synchronized (views) {
+			version++;
+			views.clear();
+		}
+	}
+
+	/**
+	 * Drops the cached views over the region, for when its Rooms are evicted.
+	 *
+	 * @param region region of the GameMap
+	 */
+	void invalidateRegion(MapRegion region) {
+		int minX = region.getRegionX() * MapRegion.REGION_SIZE;
+		int minY = region.getRegionY() * MapRegion.REGION_SIZE;
+		int maxX = (minX + MapRegion.REGION_SIZE) - 1;
+		int maxY = (minY + MapRegion.REGION_SIZE) - 1;
+
+		synchronized (views) {
+			regionEvictions++;
+			Iterator<ViewKey> keys = views.keySet().iterator();
+			while (keys.hasNext()) {
+				ViewKey key = keys.next();
+				RoomPosition centre = key.centre;
+				if ((centre.getZ() == region.getZ()) && ((centre.getX() + key.radius) >= minX)
+						&& ((centre.getX() - key.radius) <= maxX) && ((centre.getY() + key.radius) >= minY)
+						&& ((centre.getY() - key.radius) <= maxY)) {
+					keys.remove();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generates an output object with a visual display of the {@link GameMap}
+	 * surrounding the given {@link Room}.
+	 *
+	 * @param room   Room around which to display map
+	 * @param radius Number of rooms in each direction to display, capped at the
+	 *               maximum radius
+	 * @return ClientConnectionOutput with display map lines
+	 */
+	public ClientConnectionOutput render(Room room, int radius) {
+		radius = clampRadius(radius);
+		RoomPosition centre = room.getPosition();
+		View view = getView(centre, radius);
+
+		int lineLength = view.cellsPerLine * CELL_WIDTH;
+		char[] grid = gridBuffer.get();
+		if ((grid == null) || (grid.length < view.grid.length)) {
+			grid = new char[view.grid.length];
+			gridBuffer.set(grid);
+		}
+		System.arraycopy(view.grid, 0, grid, 0, view.grid.length);
+
+		for (int cell = 0; cell < view.rooms.length; cell++) {
+			Room foundRoom = view.rooms[cell];
+			if (foundRoom == null) {
+				continue;
+			}
+
+			char marker;
+			if (foundRoom == room) {
+				marker = 'x';
+			} else if (foundRoom.hasPlayers()) {
+				marker = 'o';
+			} else {
+				continue;
+			}
+			int row = cell / view.cellsPerLine;
+			int column = cell % view.cellsPerLine;
+			grid[(((row * CELL_HEIGHT) + 1) * lineLength) + (column * CELL_WIDTH) + 2] = marker;
+		}
+
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		output.newLine();
+		output.addPart(String.format("Map around \"%s\" %s with radius %s", room.getName(), centre.toString(), radius),
+				null, null);
+		for (int offset = 0; offset < view.grid.length; offset += lineLength) {
+			output.newLine();
+			output.addPart(new String(grid, offset, lineLength), null, null);
+		}
+		output.newLine();
+
+		return output;
+	}
+
+	private View getView(RoomPosition centre, int radius) {
+		ViewKey key = new ViewKey(centre, radius);
+		int currentVersion;
+		int currentEvictions;
+		synchronized (views) {
+			View view = views.get(key);
+			currentVersion = version;
+			currentEvictions = regionEvictions;
+			if ((view != null) && (view.version == currentVersion)) {
+				return view;
+			}
+		}
+
+		View view = buildView(centre, radius, currentVersion);
+		synchronized (views) {
+			// Not cached if the map changed or a region was evicted while building.
+			if ((version == currentVersion) && (regionEvictions == currentEvictions)) {
+				views.put(key, view);
+			}
+		}
+		return view;
+	}
+
+	private View buildView(RoomPosition centre, int radius, int viewVersion) {
+		int cellsPerLine = (radius * 2) + 1;
+		int lineLength = cellsPerLine * CELL_WIDTH;
+		Room[] rooms = new Room[cellsPerLine * cellsPerLine];
+		char[] grid = new char[rooms.length * CELL_WIDTH * CELL_HEIGHT];
+
+		int cell = 0;
+		for (int row = 0; row < cellsPerLine; row++) {
+			int y = (centre.getY() + radius) - row;
+			for (int column = 0; column < cellsPerLine; column++) {
+				int x = (centre.getX() - radius) + column;
+				Room foundRoom = gameMap.getRoom(x, y, centre.getZ());
+				rooms[cell++] = foundRoom;
+
+				char[] glyph = (foundRoom == null) ? EMPTY_CELL : CELL_GLYPHS[foundRoom.getExitMask()];
+				for (int line = 0; line < CELL_HEIGHT; line++) {
+					System.arraycopy(glyph, line * CELL_WIDTH, grid,
+							(((row * CELL_HEIGHT) + line) * lineLength) + (column * CELL_WIDTH), CELL_WIDTH);
+				}
+			}
+		}
+
+		return new View(viewVersion, cellsPerLine, rooms, grid);
+	}
+}
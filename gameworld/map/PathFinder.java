@@ -0,0 +1,517 @@
+package fireengine.gameworld.map;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.logging.Level;
+
+import fireengine.gameworld.map.Direction.DIRECTION;
+import fireengine.gameworld.map.room.Room;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+import fireengine.util.MyLogger;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    PathFinder.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Finds routes between {@link Room}s of a {@link GameMap}.
+ *
+ * <p>
+ * Searches run over a compact copy of the map: each Room gets an int index,
+ * and the index of the Room through each exit is held in one int array, so
+ * following an exit is an array read rather than a map lookup. Rooms are found
+ * in the copy by position, and it keeps only their names, not the Rooms. The
+ * copy is built on first use and rebuilt after the GameMap's rooms or exits
+ * change. Routes between two Rooms are found with A*, using the Chebyshev
+ * distance in three dimensions as the heuristic (every direction moves at most
+ * one step along each axis). Recently found routes are cached until the
+ * GameMap changes.
+ * </p>
+ *
+ * <p>
+ * Each search looks at no more than the pathMaxSearchRooms setting of Rooms,
+ * so a search for an unreachable Room on a large map is bounded. A search
+ * never loads a region: with lazy region loading (see {@link MapRegionCache})
+ * only Rooms resident when the copy was built are searched, and on an instance
+ * map only the Rooms copied from its template so far (see
+ * {@link GameMap#isFullyLoaded()}). No route is found through the rest. Rooms
+ * being loaded does not drop the copy, as the Rooms already in it are
+ * unchanged; instead, when a search finds nothing and Rooms were loaded since
+ * the copy was built, it is rebuilt and the search tried again. Evicted Rooms
+ * stay in the copy, as they can be walked into again.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class PathFinder {
+	static final int DEFAULT_MAX_SEARCH_ROOMS = 250000;
+	/**
+	 * Number of routes cached per GameMap.
+	 */
+	private static final int CACHED_ROUTES = 256;
+
+	private static final DIRECTION[] DIRECTIONS = DIRECTION.values();
+
+	private static int maxSearchRooms = DEFAULT_MAX_SEARCH_ROOMS;
+
+	/**
+	 * Per thread search arrays, reused between searches.
+	 */
+	private static final ThreadLocal<SearchState> searchStates = new ThreadLocal<SearchState>() {
+		@Override
+		protected SearchState initialValue() {
+			return new SearchState();
+		}
+	};
+
+	private final GameMap gameMap;
+	/**
+	 * Changed whenever rooms or exits of the GameMap change.
+	 */
+	private volatile int version;
+	/**
+	 * Changed whenever Rooms of the GameMap are loaded. Only changed holding
+	 * routes.
+	 */
+	private volatile int roomLoads;
+	private volatile Graph graph;
+	/**
+	 * Least recently used cache of routes, by from and to Room ids. A generated
+	 * Room given a persistent id only misses its old entries, which age out, as
+	 * the compact copy is by position. Guarded by itself.
+	 */
+	private final LinkedHashMap<Long, Route> routes = new LinkedHashMap<Long, Route>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(java.util.Map.Entry<Long, Route> eldest) {
+			return size() > CACHED_ROUTES;
+		}
+	};
+
+	/**
+	 * Compact copy of the rooms and exits of the GameMap. Never modified once
+	 * built.
+	 */
+	private static final class Graph {
+		final int version;
+		final int roomLoads;
+		final String[] names;
+		final int[] x;
+		final int[] y;
+		final int[] z;
+		/**
+		 * Index of the Room through each exit, at room index *
+		 * {@link PathFinder#DIRECTIONS} length + direction ordinal, or -1.
+		 */
+		final int[] neighbours;
+		/**
+		 * Room index + 1 by position, with open addressing and linear probing, or 0
+		 * where empty. At most half full.
+		 */
+		final int[] table;
+
+		Graph(int version, int roomLoads, int roomCount) {
+			this.version = version;
+			this.roomLoads = roomLoads;
+			this.names = new String[roomCount];
+			this.x = new int[roomCount];
+			this.y = new int[roomCount];
+			this.z = new int[roomCount];
+			this.neighbours = new int[roomCount * DIRECTIONS.length];
+			this.table = new int[Integer.highestOneBit(Math.max(1, roomCount)) * 4];
+		}
+
+		private int slot(int roomX, int roomY, int roomZ) {
+			int hash = (roomX * 0x9E3779B1) + (roomY * 0x85EBCA6B) + (roomZ * 0xC2B2AE35);
+			return (hash ^ (hash >>> 16)) & (table.length - 1);
+		}
+
+		/**
+		 * Adds the room index to the table, by the position already set for it.
+		 */
+		void add(int room) {
+			int slot = slot(x[room], y[room], z[room]);
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (table.length - 1);
+			}
+			table[slot] = room + 1;
+		}
+
+		int indexOf(int roomX, int roomY, int roomZ) {
+			int slot = slot(roomX, roomY, roomZ);
+			int entry;
+			while ((entry = table[slot]) != 0) {
+				int room = entry - 1;
+				if ((x[room] == roomX) && (y[room] == roomY) && (z[room] == roomZ)) {
+					return room;
+				}
+				slot = (slot + 1) & (table.length - 1);
+			}
+			return -1;
+		}
+
+		int indexOf(Room room) {
+			RoomPosition position = room.getPosition();
+			return (position == null) ? -1 : indexOf(position.getX(), position.getY(), position.getZ());
+		}
+	}
+
+	/**
+	 * A cached route, or a cached lack of one, only valid until more Rooms are
+	 * loaded.
+	 */
+	private static final class Route {
+		final int version;
+		final int roomLoads;
+		final List<DIRECTION> path;
+
+		Route(int version, int roomLoads, List<DIRECTION> path) {
+			this.version = version;
+			this.roomLoads = roomLoads;
+			this.path = path;
+		}
+	}
+
+	/**
+	 * Arrays used during a search. Entries are only valid where stamp matches the
+	 * current search, so the arrays do not need clearing between searches.
+	 */
+	private static final class SearchState {
+		int search;
+		int[] stamp = new int[0];
+		boolean[] closed = new boolean[0];
+		int[] cost = new int[0];
+		int[] parent = new int[0];
+		byte[] parentDirection = new byte[0];
+		long[] heapKeys = new long[16];
+		int[] heapRooms = new int[16];
+		int heapSize;
+
+		void start(int roomCount) {
+			if (stamp.length < roomCount) {
+				stamp = new int[roomCount];
+				closed = new boolean[roomCount];
+				cost = new int[roomCount];
+				parent = new int[roomCount];
+				parentDirection = new byte[roomCount];
+				search = 0;
+			}
+			search++;
+			if (search == 0) {
+				Arrays.fill(stamp, 0);
+				search = 1;
+			}
+			heapSize = 0;
+		}
+
+		boolean isSeen(int room) {
+			return stamp[room] == search;
+		}
+
+		void see(int room, int roomCost, int from, int direction) {
+			stamp[room] = search;
+			closed[room] = false;
+			cost[room] = roomCost;
+			parent[room] = from;
+			parentDirection[room] = (byte) direction;
+		}
+
+		void push(long key, int room) {
+			if (heapSize == heapKeys.length) {
+				heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+				heapRooms = Arrays.copyOf(heapRooms, heapSize * 2);
+			}
+			int i = heapSize++;
+			while (i > 0) {
+				int up = (i - 1) >>> 1;
+				if (heapKeys[up] <= key) {
+					break;
+				}
+				heapKeys[i] = heapKeys[up];
+				heapRooms[i] = heapRooms[up];
+				i = up;
+			}
+			heapKeys[i] = key;
+			heapRooms[i] = room;
+		}
+
+		int pop() {
+			int top = heapRooms[0];
+			heapSize--;
+			long key = heapKeys[heapSize];
+			int room = heapRooms[heapSize];
+			int i = 0;
+			while (true) {
+				int down = (i * 2) + 1;
+				if (down >= heapSize) {
+					break;
+				}
+				if (((down + 1) < heapSize) && (heapKeys[down + 1] < heapKeys[down])) {
+					down++;
+				}
+				if (key <= heapKeys[down]) {
+					break;
+				}
+				heapKeys[i] = heapKeys[down];
+				heapRooms[i] = heapRooms[down];
+				i = down;
+			}
+			heapKeys[i] = key;
+			heapRooms[i] = room;
+			return top;
+		}
+	}
+
+	PathFinder(GameMap gameMap) {
+		this.gameMap = gameMap;
+	}
+
+	/**
+	 * Loads the search limit from the server config.
+	 */
+	public static void setupPathFinder() {
+		maxSearchRooms = Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("pathMaxSearchRooms"), DEFAULT_MAX_SEARCH_ROOMS));
+		MyLogger.log(Level.INFO, String.format("PathFinder: Searching at most %d room(s).", maxSearchRooms));
+	}
+
+	/**
+	 * Drops the compact copy of the map and all cached routes, for when rooms or
+	 * exits of the GameMap change.
+	 */
+	public void invalidate() {
+		synchronized (routes) {
+			version++;
+			routes.clear();
+		}
+	}
+
+	/**
+	 * Notes that Rooms of the GameMap were loaded, which may give routes not in
+	 * the compact copy of the map.
+	 */
+	void roomsLoaded() {
+		synchronized (routes) {
+			roomLoads++;
+		}
+	}
+
+	/**
+	 * Finds a shortest route between two {@link Room}s of the GameMap.
+	 *
+	 * @param from Room to start from
+	 * @param to   Room to reach
+	 * @return directions to move in, empty if from is to, or null if there is no
+	 *         route within the search limit
+	 */
+	public List<DIRECTION> findPath(Room from, Room to) {
+		Long key = (((long) from.getId()) << 32) | (to.getId() & 0xFFFFFFFFL);
+		int currentVersion;
+		int currentLoads;
+		synchronized (routes) {
+			Route route = routes.get(key);
+			currentVersion = version;
+			currentLoads = roomLoads;
+			if ((route != null) && (route.version == currentVersion)
+					&& ((route.path != null) || (route.roomLoads == currentLoads))) {
+				return route.path;
+			}
+		}
+
+		List<DIRECTION> path = search(currentVersion, from, to, null);
+
+		synchronized (routes) {
+			if (version == currentVersion) {
+				routes.put(key, new Route(currentVersion, currentLoads, path));
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Finds a route to the nearest {@link Room} with the given name, ignoring case.
+	 * Not cached.
+	 *
+	 * @param from Room to start from
+	 * @param name name of the Room to reach
+	 * @return directions to move in, empty if from has the name, or null if there
+	 *         is no such Room within the search limit
+	 */
+	public List<DIRECTION> findPathToName(Room from, String name) {
+		return search(version, from, null, name);
+	}
+
+	/**
+	 * @param from Room to start from
+	 * @param to   Room to reach
+	 * @return number of moves on a shortest route, or -1 if there is no route
+	 *         within the search limit
+	 */
+	public int getDistance(Room from, Room to) {
+		List<DIRECTION> path = findPath(from, to);
+		return (path == null) ? -1 : path.size();
+	}
+
+	/**
+	 * Searches the compact copy of the map, rebuilding it and searching again if
+	 * nothing is found and Rooms were loaded since it was built.
+	 */
+	private List<DIRECTION> search(int currentVersion, Room from, Room to, String goalName) {
+		Graph graph = getGraph(currentVersion, false);
+		List<DIRECTION> path = search(graph, graph.indexOf(from), (to == null) ? -1 : graph.indexOf(to), goalName);
+		if ((path == null) && (graph.roomLoads != roomLoads)) {
+			graph = getGraph(currentVersion, true);
+			path = search(graph, graph.indexOf(from), (to == null) ? -1 : graph.indexOf(to), goalName);
+		}
+		return path;
+	}
+
+	/**
+	 * @param currentVersion version the copy must be built at
+	 * @param withLoads      true if the copy must also include all Rooms loaded
+	 *                       so far
+	 */
+	private Graph getGraph(int currentVersion, boolean withLoads) {
+		Graph graph = this.graph;
+		if (isCurrent(graph, currentVersion, withLoads)) {
+			return graph;
+		}
+
+		synchronized (this) {
+			graph = this.graph;
+			if (!isCurrent(graph, currentVersion, withLoads)) {
+				graph = buildGraph(currentVersion);
+				this.graph = graph;
+			}
+			return graph;
+		}
+	}
+
+	private boolean isCurrent(Graph graph, int currentVersion, boolean withLoads) {
+		return (graph != null) && (graph.version == currentVersion) && (!withLoads || (graph.roomLoads == roomLoads));
+	}
+
+	private Graph buildGraph(int graphVersion) {
+		long start = System.nanoTime();
+		// Read first, so Rooms loaded during the build are seen as loaded since.
+		int graphLoads = roomLoads;
+		List<Room> roomList = gameMap.getRooms();
+		Graph graph = new Graph(graphVersion, graphLoads, roomList.size());
+
+		for (int i = 0; i < graph.names.length; i++) {
+			Room room = roomList.get(i);
+			RoomPosition position = room.getPosition();
+			graph.names[i] = room.getName();
+			graph.x[i] = position.getX();
+			graph.y[i] = position.getY();
+			graph.z[i] = position.getZ();
+			graph.add(i);
+		}
+
+		for (int i = 0; i < graph.names.length; i++) {
+			Room room = roomList.get(i);
+			int exitMask = room.getExitMask();
+			for (DIRECTION direction : DIRECTIONS) {
+				int neighbour = -1;
+				if (((exitMask & (1 << direction.ordinal())) != 0) && room.getExit(direction).isOpen()) {
+					neighbour = graph.indexOf(graph.x[i] + direction.getDx(), graph.y[i] + direction.getDy(),
+							graph.z[i] + direction.getDz());
+				}
+				graph.neighbours[(i * DIRECTIONS.length) + direction.ordinal()] = neighbour;
+			}
+		}
+
+		MyLogger.log(Level.FINE, String.format("PathFinder: Built graph of map '%s' with %d room(s) in %dms.",
+				gameMap.getName(), graph.names.length, (System.nanoTime() - start) / 1000000));
+		return graph;
+	}
+
+	/**
+	 * Searches from one room index to another with A*, or, if goalName is given,
+	 * breadth first to the nearest Room with that name.
+	 */
+	private static List<DIRECTION> search(Graph graph, int start, int goal, String goalName) {
+		if ((start < 0) || ((goalName == null) && (goal < 0))) {
+			return null;
+		}
+
+		SearchState state = searchStates.get();
+		state.start(graph.names.length);
+		state.see(start, 0, -1, -1);
+		state.push(heapKey(0, heuristic(graph, start, goal)), start);
+		int searched = 0;
+
+		while (state.heapSize > 0) {
+			int room = state.pop();
+			if (state.closed[room]) {
+				continue;
+			}
+			state.closed[room] = true;
+
+			if ((goalName == null) ? (room == goal) : goalName.equalsIgnoreCase(graph.names[room])) {
+				return buildPath(state, room);
+			}
+			if (++searched > maxSearchRooms) {
+				return null;
+			}
+
+			int nextCost = state.cost[room] + 1;
+			int base = room * DIRECTIONS.length;
+			for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+				int neighbour = graph.neighbours[base + direction];
+				if ((neighbour < 0) || (state.isSeen(neighbour) && (state.cost[neighbour] <= nextCost))) {
+					continue;
+				}
+				state.see(neighbour, nextCost, room, direction);
+				state.push(heapKey(nextCost, heuristic(graph, neighbour, goal)), neighbour);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Chebyshev distance in three dimensions, or 0 when searching by name.
+	 */
+	private static int heuristic(Graph graph, int room, int goal) {
+		if (goal < 0) {
+			return 0;
+		}
+		return Math.max(Math.abs(graph.x[room] - graph.x[goal]),
+				Math.max(Math.abs(graph.y[room] - graph.y[goal]), Math.abs(graph.z[room] - graph.z[goal])));
+	}
+
+	/**
+	 * Orders by estimated total cost, then by most moves already made, so ties
+	 * carry on along the current route.
+	 */
+	private static long heapKey(int cost, int estimate) {
+		return (((long) (cost + estimate)) << 32) | (Integer.MAX_VALUE - cost);
+	}
+
+	private static List<DIRECTION> buildPath(SearchState state, int goal) {
+		ArrayList<DIRECTION> path = new ArrayList<>(state.cost[goal]);
+		for (int room = goal; state.parent[room] >= 0; room = state.parent[room]) {
+			path.add(DIRECTIONS[state.parentDirection[room]]);
+		}
+		Collections.reverse(path);
+		return Collections.unmodifiableList(path);
+	}
+}
@@ -0,0 +1,91 @@
+package fireengine.gameworld.map;
+
+import javax.persistence.Column;
+import javax.persistence.Embeddable;
+
+import fireengine.gameworld.map.room.Room;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    RoomPosition.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Position of a {@link Room} within its {@link GameMap}, as a value embedded in
+ * the ROOM table. Unlike {@link Coordinate}, equality is by x, y and z rather
+ * than by a database id.
+ *
+ * @author Ben Hook
+ */
+@Embeddable
+public class RoomPosition {
+	@Column(name = "POS_X")
+	private int x;
+
+	@Column(name = "POS_Y")
+	private int y;
+
+	@Column(name = "POS_Z")
+	private int z;
+
+	@SuppressWarnings("unused")
+	private RoomPosition() {
+	}
+
+	public RoomPosition(int x, int y, int z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getZ() {
+		return z;
+	}
+
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 7;
+		result = (prime * result) + x;
+		result = (prime * result) + y;
+		result = (prime * result) + z;
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		RoomPosition other = (RoomPosition) obj;
+		return (x == other.x) && (y == other.y) && (z == other.z);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("(%s, %s, %s)", x, y, z);
+	}
+}
@@ -0,0 +1,243 @@
+package fireengine.gameworld.map;
+
+import fireengine.gameworld.map.Direction.DIRECTION;
+import fireengine.gameworld.map.room.Room;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    WildernessGenerator.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Generates the {@link Room}s of a wilderness {@link GameMap} from its seed.
+ *
+ * <p>
+ * Everything about a generated Room (whether there is one, its
+ * {@link TERRAIN}, name, description and exits) is worked out from the seed
+ * and its x, y and z alone, so the same Room is generated every time and
+ * nothing needs to be stored until the Room is changed or a player stands in
+ * it. Terrain comes from two smooth noise fields, elevation and moisture, so
+ * forests, hills and lakes form patches rather than changing every room.
+ * Rooms are only generated on z level 0; water has no Room.
+ * </p>
+ *
+ * <p>
+ * Rooms next to each other are always joined north, south, east and west, and
+ * some diagonals are joined too. Whether an exit is open is decided per pair
+ * of Rooms, so both sides agree.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class WildernessGenerator {
+	/**
+	 * Rooms per step of the noise lattice, roughly the size of a patch of
+	 * terrain.
+	 */
+	static final int TERRAIN_SCALE = 16;
+
+	private static final long ELEVATION_SALT = 1;
+	private static final long MOISTURE_SALT = 2;
+	private static final long DESCRIPTION_SALT = 3;
+	private static final long EXIT_SALT = 4;
+
+	/**
+	 * Types of generated terrain.
+	 */
+	public static enum TERRAIN {
+		PLAINS("Open Plains", new String[] {
+				"Tall grass sways in the wind across open plains, stretching as far as the eye can see.",
+				"A faint track winds through the grassland, trodden by animals more than people.",
+				"Wildflowers dot the gently rolling grassland, and insects hum in the warm air." }),
+		FOREST("Forest", new String[] {
+				"Tall trees crowd close together, their canopy letting through only scattered light.",
+				"Fallen leaves crunch underfoot between moss covered trunks and tangled undergrowth.",
+				"Birdsong echoes between the trees of the quiet forest." }),
+		MARSH("Marsh", new String[] {
+				"Reeds rise from pools of still, dark water, and the ground squelches with every step.",
+				"A low mist hangs over the marsh, carrying the smell of rotting plants." }),
+		HILLS("Rolling Hills", new String[] {
+				"Grassy hills roll away in every direction, broken by the odd outcrop of grey stone.",
+				"From the top of a rise the wind is strong and the land around is laid out below.",
+				"Loose stones clatter down the steep side of the hill." }),
+		WATER(null, null);
+
+		private final String roomName;
+		private final String[] descriptions;
+
+		TERRAIN(String roomName, String[] descriptions) {
+			this.roomName = roomName;
+			this.descriptions = descriptions;
+		}
+
+		public String getRoomName() {
+			return roomName;
+		}
+
+		/**
+		 * @return true if the terrain has Rooms
+		 */
+		public boolean isPassable() {
+			return roomName != null;
+		}
+	}
+
+	private static final DIRECTION[] HORIZONTAL_DIRECTIONS = { DIRECTION.NORTH, DIRECTION.NORTHEAST, DIRECTION.EAST,
+			DIRECTION.SOUTHEAST, DIRECTION.SOUTH, DIRECTION.SOUTHWEST, DIRECTION.WEST, DIRECTION.NORTHWEST };
+
+	private final long seed;
+
+	public WildernessGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param x
+	 * @param y
+	 * @param z
+	 * @return terrain at the position, or null off z level 0
+	 */
+	public TERRAIN getTerrain(int x, int y, int z) {
+		if (z != 0) {
+			return null;
+		}
+		if ((x == 0) && (y == 0)) {
+			// Somewhere to spawn.
+			return TERRAIN.PLAINS;
+		}
+
+		double elevation = noise(ELEVATION_SALT, x, y);
+		if (elevation < 0.3) {
+			return TERRAIN.WATER;
+		}
+		if (elevation > 0.7) {
+			return TERRAIN.HILLS;
+		}
+		double moisture = noise(MOISTURE_SALT, x, y);
+		if (moisture > 0.6) {
+			return (elevation < 0.4) ? TERRAIN.MARSH : TERRAIN.FOREST;
+		}
+		return TERRAIN.PLAINS;
+	}
+
+	/**
+	 * @return true if a Room is generated at the position
+	 */
+	public boolean hasRoom(int x, int y, int z) {
+		TERRAIN terrain = getTerrain(x, y, z);
+		return (terrain != null) && terrain.isPassable();
+	}
+
+	/**
+	 * @return exit mask (see {@link Room#getExitMask()}) of the Room generated at
+	 *         the position, 0 if there is none
+	 */
+	public int getExitMask(int x, int y, int z) {
+		if (!hasRoom(x, y, z)) {
+			return 0;
+		}
+
+		int mask = 0;
+		for (DIRECTION direction : HORIZONTAL_DIRECTIONS) {
+			int otherX = x + direction.getDx();
+			int otherY = y + direction.getDy();
+			if (hasRoom(otherX, otherY, z) && isJoined(x, y, otherX, otherY)) {
+				mask |= 1 << direction.ordinal();
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Generates the Room at the position, without saving it.
+	 *
+	 * @param gameMap wilderness map the Room belongs to
+	 * @return new generated Room, or null if there is none at the position
+	 */
+	public Room generateRoom(GameMap gameMap, int x, int y, int z) {
+		TERRAIN terrain = getTerrain(x, y, z);
+		if ((terrain == null) || !terrain.isPassable()) {
+			return null;
+		}
+
+		String description = terrain.descriptions[(int) ((hash(DESCRIPTION_SALT, x, y) >>> 1)
+				% terrain.descriptions.length)];
+		return Room.createGeneratedRoom(gameMap, new RoomPosition(x, y, z), terrain.getRoomName(), description,
+				getExitMask(x, y, z));
+	}
+
+	/**
+	 * Whether the neighbouring positions are joined by an exit, the same either way
+	 * round.
+	 */
+	private boolean isJoined(int x, int y, int otherX, int otherY) {
+		if ((x == otherX) || (y == otherY)) {
+			return true;
+		}
+		// Diagonals: key on the lower of the two positions.
+		int lowX = Math.min(x, otherX);
+		int lowY = Math.min(y, otherY);
+		boolean rising = ((otherX - x) == (otherY - y));
+		return ((hash(EXIT_SALT + (rising ? 0 : 1), lowX, lowY) & 3) == 0);
+	}
+
+	/**
+	 * Smooth value noise, bilinearly interpolated between lattice points
+	 * {@link #TERRAIN_SCALE} Rooms apart.
+	 *
+	 * @return value from 0 to 1
+	 */
+	private double noise(long salt, int x, int y) {
+		int cellX = Math.floorDiv(x, TERRAIN_SCALE);
+		int cellY = Math.floorDiv(y, TERRAIN_SCALE);
+		double fractionX = smooth((x - (cellX * TERRAIN_SCALE)) / (double) TERRAIN_SCALE);
+		double fractionY = smooth((y - (cellY * TERRAIN_SCALE)) / (double) TERRAIN_SCALE);
+
+		double bottom = lerp(lattice(salt, cellX, cellY), lattice(salt, cellX + 1, cellY), fractionX);
+		double top = lerp(lattice(salt, cellX, cellY + 1), lattice(salt, cellX + 1, cellY + 1), fractionX);
+		return lerp(bottom, top, fractionY);
+	}
+
+	private double lattice(long salt, int x, int y) {
+		return (hash(salt, x, y) >>> 11) * 0x1.0p-53;
+	}
+
+	private static double smooth(double t) {
+		return t * t * (3 - (2 * t));
+	}
+
+	private static double lerp(double a, double b, double t) {
+		return a + ((b - a) * t);
+	}
+
+	private long hash(long salt, int x, int y) {
+		long h = mix(seed + (salt * 0x9E3779B97F4A7C15L));
+		h = mix(h + (x * 0xC2B2AE3D27D4EB4FL));
+		return mix(h + (y * 0x165667B19E3779F9L));
+	}
+
+	/**
+	 * SplitMix64 finaliser.
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -26,15 +26,25 @@ import fireengine.util.IDSequenceGenerator;
  *    limitations under the License.
  */
 
+/**
+ * Exit between two {@link Room}s.
+ *
+ * @author Ben Hook
+ */
 @Entity
 @Table(name = "ROOM_EXIT")
 public class RoomExit {
+	/**
+	 * Shared plain exit, for exits stored only in a Room's exit mask. Never
+	 * persisted, so has no id.
+	 */
+	private static final RoomExit OPEN_EXIT = new RoomExit();
+
 	@Id
 	@Column(name = "ID", nullable = false)
 	@NotNull
 	private int id;
 
-	@SuppressWarnings("unused")
 	private RoomExit() {
 	}
 
@@ -42,6 +52,16 @@ public class RoomExit {
 		id = IDSequenceGenerator.getNextID("RoomExit");
 	}
 
+	/**
+	 * Returns the shared plain exit, used for exits that need no state of their
+	 * own and so no ROOM_EXIT row.
+	 *
+	 * @return shared always open RoomExit
+	 */
+	public static RoomExit getOpenExit() {
+		return OPEN_EXIT;
+	}
+
 	public int getId() {
 		return id;
 	}
@@ -50,6 +70,14 @@ public class RoomExit {
 		return true;
 	}
 
+	/**
+	 * @return true if the exit is always open and holds no other state, so can be
+	 *         stored as just a bit of the Room's exit mask
+	 */
+	public boolean isPlain() {
+		return true;
+	}
+
 	/**
 	 * Custom implementation requires for proper JPA/Hibernate function.
 	 * 
@@ -1,9 +1,14 @@
 package fireengine.gameworld.map.room;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
@@ -12,6 +17,7 @@ import javax.persistence.ManyToOne;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 import javax.persistence.Transient;
+import javax.persistence.UniqueConstraint;
 import javax.validation.constraints.NotNull;
 
 import org.hibernate.annotations.Cascade;
@@ -20,15 +26,16 @@ import fireengine.character.Character;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.gameworld.map.GameMap;
-import fireengine.gameworld.map.Coordinate;
 import fireengine.gameworld.map.Direction;
+import fireengine.gameworld.map.RoomPosition;
 import fireengine.gameworld.map.Direction.DIRECTION;
-import fireengine.gameworld.map.exception.MapExceptionDirectionNotSupported;
 import fireengine.gameworld.map.exception.MapExceptionRoomNull;
 import fireengine.gameworld.map.exit.RoomExit;
 import fireengine.util.CheckedHibernateException;
+import fireengine.util.ConfigLoader;
 import fireengine.util.IDSequenceGenerator;
 import fireengine.util.MyLogger;
+import fireengine.util.WriteBehindQueue;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -53,8 +60,9 @@ import fireengine.util.MyLogger;
  * @author Ben Hook
  */
 @Entity
-@Table(name = "ROOM")
-public class Room {
+@Table(name = "ROOM", uniqueConstraints = {
+		@UniqueConstraint(name = "UK_ROOM_MAP_POSITION", columnNames = { "MAP", "POS_X", "POS_Y", "POS_Z" }) })
+public class Room implements Cloneable, WriteBehindQueue.Copyable {
 //	/**
 //	 * TODO Might not need, only used to in saveRooms. NOT CURRENTLY USED. TODO Remove
 //	 */
@@ -71,6 +79,13 @@ public class Room {
 	@NotNull
 	private GameMap map;
 
+	/**
+	 * Position in the map, null if the Room has been removed from the map (or, for
+	 * Rooms from before positions were stored, until the map is indexed).
+	 */
+	@Embedded
+	private RoomPosition position;
+
 	@Column(name = "NAME")
 	private String name;
 
@@ -78,8 +93,23 @@ public class Room {
 	@NotNull
 	private String description;
 
-	// TODO Should probably store the below directional exits into a direction keyed
-	// map.
+	/**
+	 * Bitmask of the directions with an exit, bit {@link DIRECTION#ordinal()} set
+	 * for each. Kept for every exit, so checking for exits needs no lookups. In
+	 * {@link EXIT_STORAGE#MASK}, plain exits are stored only as their bit here.
+	 * Null for Rooms saved before the mask was stored.
+	 */
+	@Column(name = "EXIT_MASK")
+	private Short exitMask;
+
+	/**
+	 * Exits indexed by {@link DIRECTION#ordinal()}, built from the mask and the
+	 * persisted exit columns on first use. The columns below are only used to
+	 * persist exits with their own ROOM_EXIT row.
+	 */
+	@Transient
+	private volatile RoomExit[] exits;
+
 	@OneToOne(fetch = FetchType.EAGER)
 	@Cascade(CascadeType.ALL)
 	@JoinColumn(name = "EXIT_U")
@@ -130,11 +160,54 @@ public class Room {
 	@JoinColumn(name = "EXIT_NW")
 	private RoomExit northWestExit;
 
+	private static final Player[] NO_PLAYERS = new Player[0];
+
+	/**
+	 * {@link Player}s in the room. Copy on write: never modified in place, only
+	 * replaced while holding the Room's lock, so it can be read and iterated
+	 * without a lock or a copy.
+	 */
 	@Transient
-	private final ArrayList<Player> playerList;
+	private volatile Player[] players = NO_PLAYERS;
+
+	/**
+	 * How {@link RoomExit}s are persisted.
+	 */
+	public static enum EXIT_STORAGE {
+		/**
+		 * Every exit has its own ROOM_EXIT row, referenced from an EXIT_ column.
+		 */
+		ROWS,
+		/**
+		 * Plain, always open exits are stored only as a bit of EXIT_MASK, and only
+		 * exits with state of their own get a ROOM_EXIT row.
+		 */
+		MASK
+	}
+
+	private static EXIT_STORAGE exitStorage = EXIT_STORAGE.ROWS;
+
+	/**
+	 * Last id given to a generated Room, counting down from -1 so they never
+	 * clash with persisted ids.
+	 */
+	private static final AtomicInteger generatedIds = new AtomicInteger();
 
 	private Room() {
-		playerList = new ArrayList<>();
+	}
+
+	/**
+	 * Exits are changed holding this Room's lock, so it is copied holding it.
+	 */
+	@Override
+	public Object copyForWrite(Map<Object, Object> copies) {
+		synchronized (this) {
+			try {
+				return super.clone();
+			} catch (CloneNotSupportedException e) {
+				throw new IllegalStateException("Room: Failed to copy room for writing.", e);
+			}
+		}
 	}
 
 	public Room(GameMap map) {
@@ -151,16 +224,37 @@ public class Room {
 		return this.map;
 	}
 
-	@SuppressWarnings("unused")
-	private void setMap(GameMap map) {
+	/**
+	 * Points the Room at the given instance of its {@link GameMap}, for Rooms
+	 * loaded in a Hibernate Session of their own.
+	 *
+	 * @param map loaded instance of the Room's GameMap
+	 */
+	public void setMap(GameMap map) {
 		this.map = map;
 	}
 
 	/**
-	 * @return the Room's Coordinate
+	 * @return the Room's position in its map
+	 */
+	public RoomPosition getPosition() {
+		RoomPosition position = this.position;
+		if ((position == null) && (map != null)) {
+			// This instance may be a copy loaded outside the map, from before positions were
+			// stored.
+			return map.getPosition(this);
+		}
+		return position;
+	}
+
+	/**
+	 * Sets the Room's position, used by {@link GameMap} when adding or removing the
+	 * Room.
+	 *
+	 * @param position new position, or null
 	 */
-	public Coordinate getCoord() {
-		return map.getCoord(this);
+	public void setPosition(RoomPosition position) {
+		this.position = position;
 	}
 
 	public String getName() {
@@ -191,7 +285,8 @@ public class Room {
 	 * Adds a {@link Character} to the {@link Room}'s player list (typically on room
 	 * enter), so far only used to add {@link Player}s. Always use AFTER setting
 	 * room on Character, as this will check to make sure both match(check will
-	 * result in hidden-to-player error).
+	 * result in hidden-to-player error). Use
+	 * {@link #moveCharacter(Character, Room, Room)} to move between rooms.
 	 *
 	 * @param player
 	 */
@@ -202,9 +297,7 @@ public class Room {
 
 		if (player instanceof Player) {
 			synchronized (this) {
-				if (!playerList.contains(player)) {
-					playerList.add((Player) player);
-				}
+				addPlayer((Player) player);
 			}
 		} else {
 			MyLogger.log(Level.WARNING, "Room: addCharacter on Character type that is not a player.");
@@ -215,7 +308,8 @@ public class Room {
 	 * Removes a {@link Character} from the rooms player list (typically on room
 	 * exit), so far only used to remove {@link Player}s. Always use AFTER setting
 	 * room on Character, as this will check to make sure isn't removing current
-	 * player room(check will result in hidden-to-player error).
+	 * player room(check will result in hidden-to-player error). Use
+	 * {@link #moveCharacter(Character, Room, Room)} to move between rooms.
 	 *
 	 * @param player
 	 */
@@ -226,31 +320,111 @@ public class Room {
 		}
 
 		if (player instanceof Player) {
-			synchronized (playerList) {
-				playerList.remove(player);
+			synchronized (this) {
+				removePlayer((Player) player);
 			}
 		}
 	}
 
 	/**
-	 * Returns list of {@link Player}s in the room.
+	 * Moves a {@link Character} from one {@link Room}'s player list to another's in
+	 * one step, so it is never seen in both rooms or in neither. Both rooms are
+	 * locked, lowest id first, so two moves in opposite directions cannot
+	 * deadlock. Used by the Character's setRoom, after setting its room.
 	 *
-	 * @return
+	 * @param player   Character to move, so far only {@link Player}s are tracked
+	 * @param fromRoom room moved out of, may be null
+	 * @param toRoom   room moved into
 	 */
-	public ArrayList<Player> getPlayers() {
-		synchronized (playerList) {
-			for (Player player : playerList) {
-				if (player.getRoom() != this) {
-					MyLogger.log(Level.WARNING,
-							"Room: Player found in playerList of room, that is not current room of Player. Player id: "
-									+ player.getId());
-				}
+	public static void moveCharacter(Character player, Room fromRoom, Room toRoom) {
+		if (!(player instanceof Player)) {
+			MyLogger.log(Level.WARNING, "Room: moveCharacter on Character type that is not a player.");
+			return;
+		}
+		if ((fromRoom == null) || (fromRoom == toRoom)) {
+			synchronized (toRoom) {
+				toRoom.addPlayer((Player) player);
 			}
+			return;
+		}
 
-			return new ArrayList<>(playerList);
+		Room first = fromRoom;
+		Room second = toRoom;
+		if ((toRoom.getId() < fromRoom.getId())
+				|| ((toRoom.getId() == fromRoom.getId()) && (System.identityHashCode(toRoom) < System
+						.identityHashCode(fromRoom)))) {
+			// Copies of the same Room from different sessions share an id.
+			first = toRoom;
+			second = fromRoom;
+		}
+
+		synchronized (first) {
+			synchronized (second) {
+				fromRoom.removePlayer((Player) player);
+				toRoom.addPlayer((Player) player);
+			}
+		}
+	}
+
+	/**
+	 * Must be called holding this Room's lock.
+	 */
+	private void addPlayer(Player player) {
+		Player[] current = players;
+		for (Player found : current) {
+			if (found == player) {
+				return;
+			}
+		}
+
+		Player[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = player;
+		players = updated;
+		if (map != null) {
+			map.playersChanged(1);
+		}
+	}
+
+	/**
+	 * Must be called holding this Room's lock.
+	 */
+	private void removePlayer(Player player) {
+		Player[] current = players;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == player) {
+				if (current.length == 1) {
+					players = NO_PLAYERS;
+				} else {
+					Player[] updated = new Player[current.length - 1];
+					System.arraycopy(current, 0, updated, 0, i);
+					System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+					players = updated;
+				}
+				if (map != null) {
+					map.playersChanged(-1);
+				}
+				return;
+			}
 		}
 	}
 
+	/**
+	 * Returns the {@link Player}s in the room, as a read only view of the current
+	 * snapshot. Later moves do not change the returned list.
+	 *
+	 * @return
+	 */
+	public List<Player> getPlayers() {
+		return Collections.unmodifiableList(Arrays.asList(players));
+	}
+
+	/**
+	 * @return true if there are any {@link Player}s in the room
+	 */
+	public boolean hasPlayers() {
+		return players.length != 0;
+	}
+
 	/**
 	 * Sends to listeners of room, without any exclusion.
 	 *
@@ -273,78 +447,132 @@ public class Room {
 	 *                        output
 	 */
 	public void sendToRoomExcluding(ClientConnectionOutput output, Character ignoreCharacter) {
-		synchronized (playerList) {
-			for (Player player : playerList) {
-				if (ignoreCharacter == null) {
+		for (Player player : players) {
+			if (ignoreCharacter == null) {
+				player.sendToListeners(output);
+			} else {
+				if (!(player.equals(ignoreCharacter))) {
 					player.sendToListeners(output);
-				} else {
-					if (!(player.equals(ignoreCharacter))) {
-						player.sendToListeners(output);
-					}
 				}
 			}
 		}
 	}
 
+	/**
+	 * Loads the {@link EXIT_STORAGE} from the server config. Must be called before
+	 * any exits are changed.
+	 */
+	public static void setupExitStorage() {
+		String setting = ConfigLoader.getSetting("roomExitStorage");
+		if ((setting != null) && setting.trim().equalsIgnoreCase(EXIT_STORAGE.MASK.toString())) {
+			exitStorage = EXIT_STORAGE.MASK;
+		} else {
+			exitStorage = EXIT_STORAGE.ROWS;
+		}
+		MyLogger.log(Level.INFO, String.format("Room: Using exit storage %s.", exitStorage));
+	}
+
+	public static EXIT_STORAGE getExitStorage() {
+		return exitStorage;
+	}
+
+	/**
+	 * Returns the exits array, building it on first use from the persisted exit
+	 * columns and mask.
+	 */
+	private RoomExit[] getExits() {
+		RoomExit[] exits = this.exits;
+		if (exits == null) {
+			synchronized (this) {
+				exits = this.exits;
+				if (exits == null) {
+					exits = loadExits();
+					this.exits = exits;
+				}
+			}
+		}
+		return exits;
+	}
+
+	private RoomExit[] loadExits() {
+		// Same order as DIRECTION.
+		RoomExit[] exits = new RoomExit[] { upExit, downExit, northExit, northEastExit, eastExit, southEastExit,
+				southExit, southWestExit, westExit, northWestExit };
+		int mask = (exitMask == null) ? 0 : exitMask;
+		int loadedMask = 0;
+
+		for (int i = 0; i < exits.length; i++) {
+			if ((exits[i] == null) && ((mask & (1 << i)) != 0)) {
+				exits[i] = RoomExit.getOpenExit();
+			}
+			if (exits[i] != null) {
+				loadedMask |= 1 << i;
+			}
+		}
+		exitMask = (short) loadedMask;
+		return exits;
+	}
+
 	/**
 	 * Returns {@link RoomExit} of {@link Room} for given
 	 * {@link fireengine.gameworld.map.Direction.DIRECTION}.
 	 *
 	 * @param direction
 	 * @return RoomExit for specified direction, or null if not set
-	 * @throws MapExceptionDirectionNotSupported
 	 */
-	public RoomExit getExit(Direction.DIRECTION direction) throws MapExceptionDirectionNotSupported {
-		switch (direction) {
-		case UP: {
-			return upExit;
-		}
-		case DOWN: {
-			return downExit;
-		}
-		case NORTH: {
-			return northExit;
-		}
-		case NORTHEAST: {
-			return northEastExit;
-		}
-		case EAST: {
-			return eastExit;
-		}
-		case SOUTHEAST: {
-			return southEastExit;
-		}
-		case SOUTH: {
-			return southExit;
-		}
-		case SOUTHWEST: {
-			return southWestExit;
-		}
-		case WEST: {
-			return westExit;
-		}
-		case NORTHWEST: {
-			return northWestExit;
-		}
-		default: {
-			throw new MapExceptionDirectionNotSupported(
-					"Room: getExit missing case for direction " + direction.toString() + ".");
-		}
-		}
+	public RoomExit getExit(Direction.DIRECTION direction) {
+		return getExits()[direction.ordinal()];
+	}
+
+	/**
+	 * @param direction
+	 * @return true if the Room has an exit in the given direction
+	 */
+	public boolean hasExit(Direction.DIRECTION direction) {
+		return (getExitMask() & (1 << direction.ordinal())) != 0;
+	}
+
+	/**
+	 * @return bitmask of the directions with an exit, bit
+	 *         {@link DIRECTION#ordinal()} set for each
+	 */
+	public int getExitMask() {
+		getExits();
+		return exitMask;
 	}
 
 	/**
 	 * Assigns {@link RoomExit} to {@link Room}, of given
-	 * {@link fireengine.gameworld.map.Direction.DIRECTION}.
+	 * {@link fireengine.gameworld.map.Direction.DIRECTION}. Does not save the
+	 * Room; {@link GameMap#createExit} and {@link GameMap#deleteExit} save both
+	 * Rooms of an exit once they are set.
 	 *
 	 * @param direction
 	 * @param newExit
-	 * @throws MapExceptionDirectionNotSupported
-	 * @throws CheckedHibernateException
-	 * @throws MapExceptionRoomNull
 	 */
-	public void setExit(Direction.DIRECTION direction, RoomExit newExit)
-			throws MapExceptionDirectionNotSupported, MapExceptionRoomNull, CheckedHibernateException {
+	public void setExit(Direction.DIRECTION direction, RoomExit newExit) {
+		synchronized (this) {
+			RoomExit[] exits = getExits();
+			exits[direction.ordinal()] = newExit;
+			if (newExit == null) {
+				exitMask = (short) (exitMask & ~(1 << direction.ordinal()));
+			} else {
+				exitMask = (short) (exitMask | (1 << direction.ordinal()));
+			}
+
+			if ((newExit != null) && (exitStorage == EXIT_STORAGE.MASK) && newExit.isPlain()) {
+				setPersistedExit(direction, null);
+			} else {
+				setPersistedExit(direction, newExit);
+			}
+		}
+	}
+
+	/**
+	 * Sets the persisted exit column for the direction. Must be called holding
+	 * this Room's lock.
+	 */
+	private void setPersistedExit(Direction.DIRECTION direction, RoomExit newExit) {
 		switch (direction) {
 		case UP: {
 			this.upExit = newExit;
@@ -386,15 +614,7 @@ public class Room {
 			this.northWestExit = newExit;
 			break;
 		}
-		default: {
-			throw new MapExceptionDirectionNotSupported(
-					"Room: setExit missing case for direction " + direction.toString() + ".");
-		}
 		}
-//		saveRoom(this);
-		// Temporarily removed the above as the below should cascade down and save the
-		// change.
-		GameMap.saveMap(map);
 	}
 
 	/**
@@ -405,19 +625,7 @@ public class Room {
 	 * @return
 	 */
 	protected boolean hasExit() {
-		for (DIRECTION direction : DIRECTION.values()) {
-			try {
-				if (getExit(direction) != null) {
-					return true;
-				}
-			} catch (MapExceptionDirectionNotSupported e) {
-				MyLogger.log(Level.WARNING,
-						"Room: MapExceptionDirectionNotSupported while trying to hasExit; direction: "
-								+ direction.toString(),
-						e);
-			}
-		}
-		return false;
+		return getExitMask() != 0;
 	}
 
 	/**
@@ -512,6 +720,80 @@ public class Room {
 		return newRoom;
 	}
 
+	/**
+	 * Creates new {@link Room} at the given position in the map, without saving it.
+	 *
+	 * @param map      map the room belongs to
+	 * @param position position of the room in the map
+	 * @return new room
+	 * @throws CheckedHibernateException
+	 */
+	public static Room createRoom(GameMap map, RoomPosition position) throws CheckedHibernateException {
+		Room newRoom = new Room(map);
+		newRoom.setPosition(position);
+		return newRoom;
+	}
+
+	/**
+	 * Creates a Room generated for a wilderness {@link GameMap}, with a temporary
+	 * negative id, so no id is taken from the sequence until the Room is
+	 * persisted. Not saved; see {@link #assignId()}.
+	 *
+	 * @param map         map the room belongs to
+	 * @param position    position of the room in the map
+	 * @param name        room name
+	 * @param description room description
+	 * @param exitMask    exits of the room, as a mask of plain open exits
+	 * @return new generated room
+	 */
+	public static Room createGeneratedRoom(GameMap map, RoomPosition position, String name, String description,
+			int exitMask) {
+		Room newRoom = new Room();
+		newRoom.id = generatedIds.decrementAndGet();
+		newRoom.map = map;
+		newRoom.position = position;
+		newRoom.name = name;
+		newRoom.description = description;
+		newRoom.exitMask = (short) exitMask;
+		return newRoom;
+	}
+
+	/**
+	 * Creates a Room of an instance {@link GameMap} from the Room at the same
+	 * position of its template map. The name, description and exits are shared
+	 * with the template Room until changed on this Room, which never changes the
+	 * template. Has a temporary negative id like a generated Room, so costs no id
+	 * or database write.
+	 *
+	 * @param instance     instance map the room belongs to
+	 * @param templateRoom Room of the template map to copy
+	 * @return new instance room
+	 */
+	public static Room createInstanceRoom(GameMap instance, Room templateRoom) {
+		return createGeneratedRoom(instance, templateRoom.getPosition(), templateRoom.name, templateRoom.description,
+				templateRoom.getExitMask());
+	}
+
+	/**
+	 * @return true if the Room was generated and has not been given a persistent
+	 *         id yet
+	 */
+	public boolean isGenerated() {
+		return id < 0;
+	}
+
+	/**
+	 * Gives a generated Room a persistent id from the sequence, before it is first
+	 * saved. Does nothing for other Rooms.
+	 */
+	public void assignId() {
+		synchronized (this) {
+			if (id < 0) {
+				id = IDSequenceGenerator.getNextID("Room");
+			}
+		}
+	}
+
 //	/**
 //	 * Saves/persists the {@link Room} into the database.
 //	 *
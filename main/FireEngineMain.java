@@ -11,16 +11,21 @@ import org.hibernate.HibernateException;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
 
+import fireengine.character.command.action.ActionProfiler;
 import fireengine.character.player.Player;
+import fireengine.character.player.PlayerCache;
 import fireengine.client_io.ClientConnectionOutput;
 import fireengine.client_io.ClientIOTelnet;
 import fireengine.client_io.exception.ClientIOTelnetException;
 import fireengine.gameworld.GameWorld;
+import fireengine.gameworld.map.MapRegionCache;
 import fireengine.session.Session;
+import fireengine.session.SessionScheduler;
 import fireengine.session.phase.PhaseManager;
 import fireengine.util.CheckedHibernateException;
 import fireengine.util.ConfigLoader;
 import fireengine.util.MyLogger;
+import fireengine.util.WriteBehindQueue;
 
 /*
  *    Copyright 2019 Ben Hook
@@ -126,6 +131,8 @@ public class FireEngineMain {
 		} catch (HibernateException e) {
 			throw new FireEngineMainSetupException("FireEngineMain: Hibernate Exception", e);
 		}
+		WriteBehindQueue.setupWriteBehind();
+		PlayerCache.setupPlayerCache();
 
 		MyLogger.log(Level.INFO, "FireEngineMain: Setting up GameWorld");
 		GameWorld.setupGameworld();
@@ -135,6 +142,11 @@ public class FireEngineMain {
 
 		MyLogger.log(Level.INFO, "FireEngineMain: Initiating Session Executors");
 		sessionExecutor = Executors.newFixedThreadPool(SESSION_EXECUTOR_POOL);
+		SessionScheduler.setupScheduler();
+
+		if (Boolean.parseBoolean(ConfigLoader.getSetting("actionProfiling"))) {
+			ActionProfiler.setEnabled(true);
+		}
 
 		startClientIOTelnet();
 	}
@@ -230,6 +242,8 @@ public class FireEngineMain {
 	private static void shutdown() {
 		MyLogger.log(Level.INFO, "FireEngineMain: Starting FireEngine shutdown.");
 		shutdownClientIO();
+		SessionScheduler.shutdownScheduler();
+		MapRegionCache.shutdownRegionCache();
 		sessionExecutor.shutdown();
 		try {
 			sessionExecutor.awaitTermination(10, TimeUnit.SECONDS);
@@ -240,7 +254,9 @@ public class FireEngineMain {
 			sessionExecutor.shutdownNow();
 		}
 		
+		PlayerCache.shutdownPlayerCache();
 		Player.saveAllCharacters();
+		WriteBehindQueue.shutdownWriteBehind();
 		
 		if (hibSessFactory != null) {
 			hibSessFactory.close();
@@ -20,8 +20,10 @@ package fireengine.session;
 import java.util.ArrayList;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
+import fireengine.character.command.action.Action;
 import fireengine.character.player.Player;
 import fireengine.client_io.ClientConnection;
 import fireengine.client_io.ClientConnectionOutput;
@@ -30,6 +32,7 @@ import fireengine.client_io.exception.ClientConnectionException;
 import fireengine.main.FireEngineMain;
 import fireengine.session.phase.PhaseManager;
 import fireengine.util.MyLogger;
+import fireengine.util.TokenBucket;
 import mud_game.session.phase.PhaseWelcome;
 
 /**
@@ -50,6 +53,27 @@ public class Session {
 	private volatile boolean closed;
 	private Future<Integer> sessionFuture;
 
+	/**
+	 * Set while the Session is queued or running in the {@link SessionScheduler}.
+	 */
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private final TokenBucket commandBucket = SessionScheduler.createCommandBucket();
+
+	/**
+	 * {@link Player} currently connected to the Session, used to work out the
+	 * {@link Action.PRIORITY} of input.
+	 */
+	private volatile Player player;
+
+	/**
+	 * Next line of input, read ahead of processing so the {@link SessionScheduler}
+	 * can schedule it by priority. Only used by the thread the Session is
+	 * scheduled on.
+	 */
+	private String nextInput;
+	private Action.PRIORITY nextInputPriority;
+	private long nextInputDeferredSince;
+
 	/**
 	 * Creates a new Session for the provided {@link ClientConnection}
 	 *
@@ -102,51 +126,181 @@ public class Session {
 		ccon.writeToConnection(output, ansi);
 	}
 
-	// TODO Needs to exit from call early if already processing command, and check
-	// for more input after finished processing.
 	/**
 	 * Let the Session know that input has been received by the
-	 * {@link ClientConnection}.
+	 * {@link ClientConnection}. The input is processed by the
+	 * {@link SessionScheduler}, in turn with other Sessions.
 	 */
 	public void notifyInput() {
-		synchronized (this) {
-			if (sessionFuture != null) {
-				if (!sessionFuture.isDone()) {
-					// Indicates that input is received while prior input still being processed
-					// (such as when many commands received in quick succession).
-					MyLogger.log(Level.FINE, "notifyInput WAITING");
-					return;
+		if (closed) {
+			MyLogger.log(Level.WARNING, "Session: notifyInput recieved while session closed.");
+			return;
+		}
+
+		SessionScheduler.schedule(this);
+	}
+
+	/**
+	 * Let the Session know that the {@link ClientConnection} has had to drop
+	 * input as too much was received, so the client can be told to slow down.
+	 */
+	public void notifyInputOverflow() {
+		send(new ClientConnectionOutput(
+				"You are sending commands faster than they can be processed; slow down. Some input was dropped.",
+				ClientIOColour.COLOURS.BRIGHTRED, null));
+	}
+
+	/**
+	 * Used by {@link SessionScheduler} to claim the Session for processing.
+	 *
+	 * @return true if the Session was not already scheduled
+	 */
+	boolean markScheduled() {
+		return scheduled.compareAndSet(false, true);
+	}
+
+	/**
+	 * Used by {@link SessionScheduler} to release the Session once it has no
+	 * input left to process.
+	 */
+	void clearScheduled() {
+		scheduled.set(false);
+	}
+
+	TokenBucket getCommandBucket() {
+		return commandBucket;
+	}
+
+	public Player getPlayer() {
+		return player;
+	}
+
+	/**
+	 * Sets the {@link Player} connected to the Session, called by the Player when
+	 * it connects or disconnects.
+	 *
+	 * @param player Player now connected, or null
+	 */
+	public void setPlayer(Player player) {
+		this.player = player;
+	}
+
+	/**
+	 * @return true if there is input waiting to process
+	 */
+	boolean hasPendingInput() {
+		if (nextInput != null) {
+			return true;
+		}
+		ClientConnection ccon = this.ccon;
+		return (ccon != null) && ccon.hasInput();
+	}
+
+	/**
+	 * Returns the {@link Action.PRIORITY} of the next line of input, reading it
+	 * from the {@link ClientConnection} if not already read.
+	 *
+	 * @return priority of the next input, NORMAL if there is none
+	 */
+	Action.PRIORITY peekInputPriority() {
+		if (nextInput == null) {
+			ClientConnection ccon = this.ccon;
+			if (ccon == null) {
+				return Action.PRIORITY.NORMAL;
+			}
+			nextInput = ccon.readFromConnection();
+			if (nextInput == null) {
+				return Action.PRIORITY.NORMAL;
+			}
+
+			Player player = this.player;
+			nextInputPriority = Action.PRIORITY.NORMAL;
+			nextInputDeferredSince = 0;
+			if (player != null) {
+				try {
+					nextInputPriority = player.getInputPriority(nextInput);
+				} catch (Exception e) {
+					MyLogger.log(Level.WARNING, "Session: Exception while working out priority of input.", e);
 				}
 			}
+		}
+		return nextInputPriority;
+	}
+
+	/**
+	 * Records that the next input has been deferred by the {@link SessionScheduler}.
+	 *
+	 * @param now current {@link System#nanoTime()}
+	 * @return nanoseconds since the next input was first deferred, or -1 if this is
+	 *         the first time
+	 */
+	long deferNextInput(long now) {
+		if (nextInputDeferredSince == 0) {
+			nextInputDeferredSince = now;
+			return -1;
+		}
+		return now - nextInputDeferredSince;
+	}
+
+	/**
+	 * Drops the next input without processing it, letting the client know the
+	 * server was too busy.
+	 */
+	void shedNextInput() {
+		String input = nextInput;
+		nextInput = null;
+		if (input != null) {
+			send(new ClientConnectionOutput(String.format("The server is too busy, '%s' was not done.", input),
+					ClientIOColour.COLOURS.BRIGHTRED, null));
+		}
+	}
+
+	/**
+	 * @return true if the Session has been asked to end but has not yet done so
+	 */
+	boolean isEndPending() {
+		return closing && !closed;
+	}
 
-			if (closed) {
-				MyLogger.log(Level.WARNING, "Session: notifyInput recieved while session closed.");
+	/**
+	 * Reads and processes a single line of input from the {@link ClientConnection},
+	 * taking a token from the Session's command rate limiter.
+	 */
+	void processNextInput() {
+		String input = nextInput;
+		if (input != null) {
+			nextInput = null;
+		} else {
+			ClientConnection ccon = this.ccon;
+			if (ccon == null) {
 				return;
 			}
+			input = ccon.readFromConnection();
+			if (input == null) {
+				return;
+			}
+		}
 
-			sessionFuture = FireEngineMain.sessionExecutor.submit(new Callable<Integer>() {
-				@Override
-				public Integer call() throws Exception {
-					String input;
-
-					while ((input = ccon.readFromConnection()) != null) {
-						try {
-							phaseManager.acceptInput(input);
-						} catch (Exception e) {
-							MyLogger.log(Level.SEVERE,
-									"Session: Unexpected exception caught from phaseManager.acceptInput(input).", e);
-						}
-					}
-
-					if (closing) {
-						send(endMsg());
-						closed = true;
-						ccon.shutdown();
-					}
+		commandBucket.tryTake();
+		try {
+			phaseManager.acceptInput(input);
+		} catch (Exception e) {
+			MyLogger.log(Level.SEVERE, "Session: Unexpected exception caught from phaseManager.acceptInput(input).",
+					e);
+		}
+	}
 
-					return 0;
-				}
-			});
+	/**
+	 * Called by {@link SessionScheduler} once all waiting input has been
+	 * processed, to finish ending the Session if it has been asked to end.
+	 */
+	void finishProcessing() {
+		synchronized (this) {
+			if (closing && !closed && (ccon != null)) {
+				send(endMsg());
+				closed = true;
+				ccon.shutdown();
+			}
 		}
 	}
 
@@ -214,6 +368,8 @@ public class Session {
 
 			sessionFuture = null;
 			sess = null;
+			player = null;
+			nextInput = null;
 
 			synchronized (sessionList) {
 				sessionList.remove(this);
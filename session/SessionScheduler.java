@@ -0,0 +1,319 @@
+package fireengine.session;
+
+import java.util.EnumMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import fireengine.character.command.action.Action.PRIORITY;
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.main.FireEngineMain;
+import fireengine.util.ConfigLoader;
+import fireengine.util.MathUtils;
+import fireengine.util.MyLogger;
+import fireengine.util.TokenBucket;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    SessionScheduler.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Schedules {@link Session} input processing fairly onto
+ * {@link FireEngineMain#sessionExecutor}.
+ *
+ * <p>
+ * Each time a Session is run it processes at most a quantum of commands, and if
+ * it still has input it is resubmitted to the back of the executor queue, so
+ * Sessions with input take turns (round robin) instead of one Session draining
+ * its whole input queue while others wait. Each Session also has a commands per
+ * second {@link TokenBucket}; once it is empty the Session is parked on a timer
+ * until the next token is due, leaving its remaining input queued.
+ * </p>
+ *
+ * <p>
+ * Sessions wait in a lane for the {@link PRIORITY} of their next command, and
+ * free executor threads always take from the highest priority lane first. The
+ * time Sessions wait in the lanes is measured, and while it is over the
+ * overload threshold low priority commands (such as chat) are deferred, and
+ * dropped if deferred for too long, so they do not hold up movement, quitting
+ * or admin commands.
+ * </p>
+ *
+ * <p>
+ * Settings (server config file, all optional): sessionCommandsPerQuantum,
+ * sessionCommandsPerSecond, sessionCommandBurst, sessionOverloadDelayMillis
+ * and sessionLowPriorityShedMillis.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class SessionScheduler {
+	static final int DEFAULT_COMMANDS_PER_QUANTUM = 5;
+	static final int DEFAULT_COMMANDS_PER_SECOND = 10;
+	static final int DEFAULT_COMMAND_BURST = 20;
+	static final int DEFAULT_OVERLOAD_DELAY_MILLIS = 200;
+	static final int DEFAULT_LOW_PRIORITY_SHED_MILLIS = 5000;
+
+	/**
+	 * How long the server counts as overloaded after a queue delay over the
+	 * threshold was last seen.
+	 */
+	private static final long OVERLOAD_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+	/**
+	 * How long a deferred low priority command waits before being tried again.
+	 */
+	private static final long DEFER_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static int commandsPerQuantum = DEFAULT_COMMANDS_PER_QUANTUM;
+	private static int commandsPerSecond = DEFAULT_COMMANDS_PER_SECOND;
+	private static int commandBurst = DEFAULT_COMMAND_BURST;
+	private static long overloadDelayNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OVERLOAD_DELAY_MILLIS);
+	private static long lowPriorityShedNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_LOW_PRIORITY_SHED_MILLIS);
+
+	private static final EnumMap<PRIORITY, ConcurrentLinkedQueue<QueuedSession>> lanes = new EnumMap<>(
+			PRIORITY.class);
+	/**
+	 * Moving average of queue delay per lane, in nanoseconds. Guarded by itself.
+	 */
+	private static final EnumMap<PRIORITY, Long> laneDelays = new EnumMap<>(PRIORITY.class);
+	private static volatile long lastOverload;
+	private static final AtomicLong deferredCommands = new AtomicLong();
+	private static final AtomicLong shedCommands = new AtomicLong();
+
+	static {
+		for (PRIORITY priority : PRIORITY.values()) {
+			lanes.put(priority, new ConcurrentLinkedQueue<>());
+			laneDelays.put(priority, 0L);
+		}
+	}
+
+	/**
+	 * A {@link Session} waiting in a lane, and when it started waiting.
+	 */
+	private static final class QueuedSession {
+		final Session sess;
+		final long queuedAt;
+
+		QueuedSession(Session sess, long queuedAt) {
+			this.sess = sess;
+			this.queuedAt = queuedAt;
+		}
+	}
+
+	/**
+	 * Timer used to wake Sessions that ran out of command tokens.
+	 */
+	private static ScheduledExecutorService throttleTimer;
+
+	private SessionScheduler() {
+	}
+
+	/**
+	 * Loads scheduler settings and starts the throttle timer. Must be called before
+	 * any {@link Session} is created.
+	 */
+	public static void setupScheduler() {
+		commandsPerQuantum = Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("sessionCommandsPerQuantum"), DEFAULT_COMMANDS_PER_QUANTUM));
+		commandsPerSecond = Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("sessionCommandsPerSecond"), DEFAULT_COMMANDS_PER_SECOND));
+		commandBurst = Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("sessionCommandBurst"), DEFAULT_COMMAND_BURST));
+		overloadDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, MathUtils
+				.parseInt(ConfigLoader.getSetting("sessionOverloadDelayMillis"), DEFAULT_OVERLOAD_DELAY_MILLIS)));
+		lowPriorityShedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, MathUtils.parseInt(
+				ConfigLoader.getSetting("sessionLowPriorityShedMillis"), DEFAULT_LOW_PRIORITY_SHED_MILLIS)));
+
+		throttleTimer = Executors.newSingleThreadScheduledExecutor();
+
+		MyLogger.log(Level.INFO,
+				String.format(
+						"SessionScheduler: %d command(s) per quantum, %d command(s) per second, burst of %d, overloaded at %dms queue delay, low priority commands dropped after %dms deferred.",
+						commandsPerQuantum, commandsPerSecond, commandBurst,
+						TimeUnit.NANOSECONDS.toMillis(overloadDelayNanos),
+						TimeUnit.NANOSECONDS.toMillis(lowPriorityShedNanos)));
+	}
+
+	/**
+	 * Stops the throttle timer, typically on application shutdown.
+	 */
+	public static void shutdownScheduler() {
+		if (throttleTimer != null) {
+			throttleTimer.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return a new per Session command rate limiter using the configured rate
+	 */
+	static TokenBucket createCommandBucket() {
+		return new TokenBucket(commandsPerSecond, commandBurst);
+	}
+
+	/**
+	 * Schedules the {@link Session} to process its input, if it is not already
+	 * scheduled or running.
+	 *
+	 * @param sess Session with input waiting
+	 */
+	static void schedule(Session sess) {
+		if (sess.markScheduled()) {
+			enqueue(sess);
+		}
+	}
+
+	/**
+	 * Adds the scheduled {@link Session} to the lane for the priority of its next
+	 * command, and queues a task to run the next waiting Session.
+	 *
+	 * @param sess Session marked as scheduled
+	 */
+	private static void enqueue(Session sess) {
+		PRIORITY priority = sess.hasPendingInput() ? sess.peekInputPriority() : PRIORITY.HIGH;
+		lanes.get(priority).add(new QueuedSession(sess, System.nanoTime()));
+		FireEngineMain.sessionExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				runNext();
+			}
+		});
+	}
+
+	/**
+	 * Runs the next waiting {@link Session} from the highest priority lane. One of
+	 * these tasks is queued per Session added to a lane, so there is always a
+	 * Session waiting for it.
+	 */
+	private static void runNext() {
+		for (PRIORITY priority : PRIORITY.values()) {
+			QueuedSession queued = lanes.get(priority).poll();
+			if (queued != null) {
+				long now = System.nanoTime();
+				recordDelay(priority, now - queued.queuedAt, now);
+				runQuantum(queued.sess);
+				return;
+			}
+		}
+	}
+
+	private static void recordDelay(PRIORITY priority, long delay, long now) {
+		synchronized (laneDelays) {
+			long average = laneDelays.get(priority);
+			laneDelays.put(priority, average + ((delay - average) / 8));
+		}
+		if (delay > overloadDelayNanos) {
+			lastOverload = now;
+		}
+	}
+
+	/**
+	 * @return true if a queue delay over the overload threshold has been seen
+	 *         recently
+	 */
+	public static boolean isOverloaded() {
+		long lastOverload = SessionScheduler.lastOverload;
+		return (lastOverload != 0) && ((System.nanoTime() - lastOverload) < OVERLOAD_WINDOW_NANOS);
+	}
+
+	private static void enqueueLater(Session sess, long delayNanos) {
+		throttleTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				enqueue(sess);
+			}
+		}, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Processes up to one quantum of commands for the {@link Session}, then
+	 * requeues, parks or idles it.
+	 *
+	 * @param sess Session to process input for
+	 */
+	private static void runQuantum(Session sess) {
+		for (int processed = 0; processed < commandsPerQuantum; processed++) {
+			if (!sess.hasPendingInput()) {
+				break;
+			}
+
+			if ((sess.peekInputPriority() == PRIORITY.LOW) && isOverloaded()) {
+				long deferred = sess.deferNextInput(System.nanoTime());
+				if (deferred < 0) {
+					deferredCommands.incrementAndGet();
+				} else if (deferred > lowPriorityShedNanos) {
+					shedCommands.incrementAndGet();
+					sess.shedNextInput();
+					continue;
+				}
+				// Stay marked as scheduled and try again once the overload may have passed.
+				enqueueLater(sess, DEFER_DELAY_NANOS);
+				return;
+			}
+
+			long waitNanos = sess.getCommandBucket().nanosUntilAvailable();
+			if (waitNanos > 0) {
+				// Out of tokens; stay marked as scheduled so no other thread runs this Session,
+				// and wake up when the next token is due.
+				enqueueLater(sess, waitNanos);
+				return;
+			}
+
+			sess.processNextInput();
+		}
+
+		if (sess.hasPendingInput()) {
+			// Back of its lane, behind any other Sessions waiting.
+			enqueue(sess);
+			return;
+		}
+
+		sess.finishProcessing();
+		sess.clearScheduled();
+
+		// Input (or a request to end) may have arrived after the checks above but
+		// before clearing, in which case notifyInput saw this Session as still
+		// scheduled.
+		if (sess.hasPendingInput() || sess.isEndPending()) {
+			schedule(sess);
+		}
+	}
+
+	/**
+	 * Returns scheduler metrics for display to Admins: lane depths and average
+	 * queue delays, and how many low priority commands have been deferred or
+	 * dropped.
+	 *
+	 * @return {@link ClientConnectionOutput} of scheduler metrics
+	 */
+	public static ClientConnectionOutput getSchedulerInfo() {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		output.addPart(String.format("Session scheduler (%s):", isOverloaded() ? "overloaded" : "normal"), null, null);
+		synchronized (laneDelays) {
+			for (PRIORITY priority : PRIORITY.values()) {
+				output.newLine();
+				output.addPart(String.format("  %-6s  %4d waiting, %6.1fms average queue delay", priority,
+						lanes.get(priority).size(), laneDelays.get(priority) / 1000000.0), null, null);
+			}
+		}
+		output.newLine();
+		output.addPart(String.format("Low priority commands deferred: %d, dropped: %d.", deferredCommands.get(),
+				shedCommands.get()), null, null);
+		return output;
+	}
+}
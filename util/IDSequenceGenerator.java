@@ -1,8 +1,7 @@
 package fireengine.util;
 
-import java.util.List;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import javax.persistence.Column;
@@ -38,14 +37,31 @@ import fireengine.main.FireEngineMain;
  *    limitations under the License.
  */
 
+/**
+ * Hands out ids for entities, one sequence per id type.
+ *
+ * <p>
+ * Ids are reserved from the database in blocks (of the idBlockSize setting,
+ * default {@link #DEFAULT_BLOCK_SIZE}), so only one id in a block costs a
+ * database round trip; the rest are handed out from an in-memory counter per
+ * type without locking. The stored CUR_ID of a type is the end of the last
+ * block reserved, and is raised before any id in a block is handed out, so
+ * after a crash or restart ids carry on after the last block and are never
+ * handed out twice; the unused rest of a block is skipped.
+ * </p>
+ *
+ * @author Ben Hook
+ */
 @Entity
 @Table(name = "ID_SEQUENCE_GEN")
 public class IDSequenceGenerator implements Comparable<IDSequenceGenerator> {
-	@Transient
-	private static Set<IDSequenceGenerator> genList = new TreeSet<IDSequenceGenerator>();
+	static final int DEFAULT_BLOCK_SIZE = 100;
 
+	/**
+	 * Blocks of ids reserved in this run, by upper case id type.
+	 */
 	@Transient
-	private final static Object lock = new Object();
+	private static final ConcurrentHashMap<String, IdBlock> blocks = new ConcurrentHashMap<>();
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -61,12 +77,45 @@ public class IDSequenceGenerator implements Comparable<IDSequenceGenerator> {
 	private String idType;
 
 	/**
-	 * Current ID already assigned. Next ID will be this + 1.
+	 * Highest ID reserved, as the end of the last block. Next block starts at this
+	 * + 1.
 	 */
 	@Column(name = "CUR_ID", nullable = false)
 	@NotNull
 	private int currentID;
 
+	/**
+	 * A range of reserved ids, from start to limit inclusive.
+	 */
+	private static final class IdRange {
+		final long start;
+		final long limit;
+
+		IdRange(long start, long limit) {
+			this.start = start;
+			this.limit = limit;
+		}
+
+		boolean contains(long id) {
+			return (id >= start) && (id <= limit);
+		}
+	}
+
+	/**
+	 * Ids of one type handed out in this run. Ids are taken from next without
+	 * locking, and only count if inside the range reserved; the block's monitor is
+	 * held while reserving the next range.
+	 */
+	private static final class IdBlock {
+		final String idType;
+		final AtomicLong next = new AtomicLong(1);
+		volatile IdRange range = new IdRange(1, 0);
+
+		IdBlock(String idType) {
+			this.idType = idType;
+		}
+	}
+
 	private IDSequenceGenerator() {
 	}
 
@@ -84,109 +133,100 @@ public class IDSequenceGenerator implements Comparable<IDSequenceGenerator> {
 		return idType;
 	}
 
-	private int getCurrentId() {
-		return currentID;
-	}
-
-	private void setCurrentId(int newCurentId) {
-		currentID = newCurentId;
-	}
-
+	/**
+	 * Returns the next id of the given type. Only touches the database when a new
+	 * block of ids has to be reserved.
+	 *
+	 * @param idType type of entity, case insensitive
+	 * @return new id, or -1 if a block could not be reserved
+	 */
 	public static int getNextID(String idType) {
-		synchronized (lock) {
-			IDSequenceGenerator gen = null;
-			idType = idType.toUpperCase();
+		IdBlock block = blocks.computeIfAbsent(idType.toUpperCase(), IdBlock::new);
 
-			for (IDSequenceGenerator foundGen : genList) {
-				if (foundGen.getIdType().equals(idType)) {
-					gen = foundGen;
-				}
+		while (true) {
+			long newId = block.next.getAndIncrement();
+			if (block.range.contains(newId)) {
+				return (int) newId;
 			}
 
-			if (gen == null) {
+			synchronized (block) {
+				IdRange range = block.range;
+				if (range.contains(newId)) {
+					// Reserved by another thread meanwhile.
+					return (int) newId;
+				}
+				if (block.next.get() <= range.limit) {
+					// Another thread reserved a new block; newId was before it.
+					continue;
+				}
+
 				try {
-					gen = createOrLoadGen(idType);
+					range = reserveBlock(block.idType);
 				} catch (CheckedHibernateException e) {
-					MyLogger.log(Level.SEVERE,
-							"IDSequenceGenerator: Hibernate error while trying to create or load generator.", e);
+					MyLogger.log(Level.SEVERE, "IDSequenceGenerator: Hibernate error while trying to reserve ids.",
+							e);
 					return -1;
 				}
+				block.next.accumulateAndGet(range.start, Math::max);
+				block.range = range;
+				if (range.contains(newId)) {
+					return (int) newId;
+				}
 			}
-
-			int newId = gen.getCurrentId() + 1;
-			gen.setCurrentId(newId);
-			try {
-				saveGen(gen);
-			} catch (CheckedHibernateException e) {
-				MyLogger.log(Level.SEVERE,
-						"IDSequenceGenerator: Hibernate error while trying to save updated generator.", e);
-				return -1;
-			}
-
-			return newId;
 		}
 	}
 
-	private static IDSequenceGenerator createOrLoadGen(String idType) throws CheckedHibernateException {
-		org.hibernate.Session hibSess = FireEngineMain.hibSessFactory.openSession();
+	/**
+	 * Raises the stored CUR_ID of the id type by a block, creating the generator
+	 * row if there is none, and returns the range of ids reserved.
+	 */
+	private static IdRange reserveBlock(String idType) throws CheckedHibernateException {
+		int blockSize = Math.max(1, MathUtils.parseInt(ConfigLoader.getSetting("idBlockSize"), DEFAULT_BLOCK_SIZE));
+
+		org.hibernate.Session hibSess = null;
 		Transaction tx = null;
-		IDSequenceGenerator loadedGen = null;
+		long limit;
 
 		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
 			tx = hibSess.beginTransaction();
 
-			Query<?> query = hibSess.createQuery("FROM IDSequenceGenerator WHERE ID_TYPE = :idType");
-			query.setParameter("idType", idType);
-
-			@SuppressWarnings("unchecked")
-			List<IDSequenceGenerator> foundGens = (List<IDSequenceGenerator>) query.list();
-			tx.commit();
-
-			if (foundGens.isEmpty()) {
-				loadedGen = new IDSequenceGenerator(idType);
-				saveGen(loadedGen);
-				return loadedGen;
+			// Raised in the database, so servers sharing it never reserve the same block.
+			int updated = hibSess
+					.createQuery(
+							"UPDATE IDSequenceGenerator SET currentID = currentID + :blockSize WHERE idType = :idType")
+					.setParameter("blockSize", blockSize).setParameter("idType", idType).executeUpdate();
+			if (updated == 0) {
+				IDSequenceGenerator gen = new IDSequenceGenerator(idType);
+				gen.currentID = blockSize;
+				hibSess.save(gen);
+				limit = blockSize;
 			} else {
-				if (foundGens.size() > 1) {
+				if (updated > 1) {
 					MyLogger.log(Level.WARNING, "IDSequenceGenerator: Multiple DB results for same idType.");
 				}
-				loadedGen = foundGens.get(0);
-				genList.add(loadedGen);
-				return loadedGen;
-			}
-
-		} catch (HibernateException e) {
-			if (tx != null) {
-				tx.rollback();
+				Query<?> query = hibSess
+						.createQuery("SELECT MAX(currentID) FROM IDSequenceGenerator WHERE idType = :idType");
+				query.setParameter("idType", idType);
+				limit = ((Number) query.uniqueResult()).longValue();
 			}
-			throw new CheckedHibernateException("IDSequenceGenerator: Hibernate error while trying to createOrLoadGen.",
-					e);
-		} finally {
-			hibSess.close();
-		}
-	}
-
-	private static void saveGen(IDSequenceGenerator gen) throws CheckedHibernateException {
-		org.hibernate.Session hibSess = null;
-		Transaction tx = null;
-
-		try {
-			hibSess = FireEngineMain.hibSessFactory.openSession();
-			tx = hibSess.beginTransaction();
-
-			hibSess.saveOrUpdate(gen);
 
 			tx.commit();
 		} catch (HibernateException e) {
 			if (tx != null) {
 				tx.rollback();
 			}
-			throw new CheckedHibernateException("IDSequenceGenerator: Hibernate error while trying to saveNewGen.", e);
+			throw new CheckedHibernateException("IDSequenceGenerator: Hibernate error while trying to reserveBlock.",
+					e);
 		} finally {
 			if (hibSess != null) {
 				hibSess.close();
 			}
 		}
+
+		MyLogger.log(Level.FINE,
+				String.format("IDSequenceGenerator: Reserved %s ids %d to %d.", idType, limit - blockSize + 1, limit));
+		return new IdRange(limit - blockSize + 1, limit);
 	}
 
 	/**
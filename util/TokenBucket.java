@@ -0,0 +1,80 @@
+package fireengine.util;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    TokenBucket.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Simple token bucket rate limiter. Refills at a fixed rate per second up to a
+ * maximum burst size, and each permitted operation takes one token.
+ *
+ * @author Ben Hook
+ */
+public class TokenBucket {
+	private final double tokensPerNano;
+	private final double maxTokens;
+
+	private double tokens;
+	private long lastRefill;
+
+	/**
+	 * @param tokensPerSecond rate tokens are refilled at
+	 * @param maxTokens       maximum tokens that can be saved up (burst size)
+	 */
+	public TokenBucket(double tokensPerSecond, double maxTokens) {
+		this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+		this.maxTokens = Math.max(1, maxTokens);
+		this.tokens = this.maxTokens;
+		this.lastRefill = System.nanoTime();
+	}
+
+	private void refill(long now) {
+		tokens = Math.min(maxTokens, tokens + ((now - lastRefill) * tokensPerNano));
+		lastRefill = now;
+	}
+
+	/**
+	 * Returns how long until a token will be available, without taking one.
+	 *
+	 * @return nanoseconds until a token is available, 0 if one is available now
+	 */
+	public synchronized long nanosUntilAvailable() {
+		refill(System.nanoTime());
+		if (tokens >= 1) {
+			return 0;
+		}
+		if (tokensPerNano <= 0) {
+			return Long.MAX_VALUE;
+		}
+		return (long) Math.ceil((1 - tokens) / tokensPerNano);
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 *
+	 * @return true if a token was taken
+	 */
+	public synchronized boolean tryTake() {
+		refill(System.nanoTime());
+		if (tokens >= 1) {
+			tokens -= 1;
+			return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,538 @@
+package fireengine.util;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Transaction;
+
+import fireengine.client_io.ClientConnectionOutput;
+import fireengine.main.FireEngineMain;
+
+/*
+ *    Copyright 2019 Ben Hook
+ *    WriteBehindQueue.java
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *    		http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+/**
+ * Write-behind persistence: entities are marked dirty (or deleted) instead of
+ * being saved straight away, and a background writer saves everything marked
+ * in one transaction, with JDBC batching, at most every
+ * persistMaxStalenessMillis.
+ *
+ * <p>
+ * An entity marked again before it is written is only written once, with its
+ * state at the time of the flush. Entities are saved in the order first marked,
+ * so an entity created before another that refers to it is inserted first, and
+ * deletes are made after all saves. A flush also starts early once
+ * persistFlushBatchSize entities are waiting. If a flush fails its writes are
+ * put back to be tried again with the next one; after
+ * {@link #MAX_FAILED_FLUSHES} failures in a row the error is treated as fatal.
+ * Everything still waiting is flushed by {@link #shutdownWriteBehind()}.
+ * </p>
+ *
+ * <p>
+ * Entities are written while game threads keep changing them. Those that
+ * implement {@link Copyable} are copied as a flush starts, holding their own
+ * monitor, and the copies are saved instead, so Hibernate never reads an
+ * entity partway through a change (or iterates a collection as it is added
+ * to), and no entity's monitor is held while the database is written.
+ * </p>
+ *
+ * <p>
+ * Settings (server config file, all optional): persistWriteBehind (default
+ * true; false saves straight away as before), persistMaxStalenessMillis and
+ * persistFlushBatchSize.
+ * </p>
+ *
+ * @author Ben Hook
+ */
+public class WriteBehindQueue {
+	static final int DEFAULT_MAX_STALENESS_MILLIS = 1000;
+	static final int DEFAULT_FLUSH_BATCH_SIZE = 100;
+	static final int MAX_FAILED_FLUSHES = 3;
+
+	private static volatile boolean enabled;
+	private static long maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_STALENESS_MILLIS);
+	private static int flushBatchSize = DEFAULT_FLUSH_BATCH_SIZE;
+
+	/**
+	 * A write waiting to be flushed.
+	 */
+	private static final class PendingWrite {
+		final Object entity;
+		boolean delete;
+
+		PendingWrite(Object entity, boolean delete) {
+			this.entity = entity;
+			this.delete = delete;
+		}
+	}
+
+	/**
+	 * An entity changed by game threads while it waits to be written, saved as a
+	 * copy of its persisted state taken holding its monitor.
+	 */
+	public interface Copyable {
+		/**
+		 * Must only be called through {@link WriteBehindQueue#copyForWrite}.
+		 *
+		 * @param copies copies already taken for this flush, by entity, for
+		 *               entities cascaded to from this one
+		 * @return copy to save in place of the entity
+		 */
+		Object copyForWrite(Map<Object, Object> copies);
+	}
+
+	private static final Object lock = new Object();
+	/**
+	 * Waiting writes by entity (by identity, as some ids change before the first
+	 * save), and in the order first marked. Guarded by lock.
+	 */
+	private static IdentityHashMap<Object, PendingWrite> pending = new IdentityHashMap<>();
+	private static List<PendingWrite> pendingOrder = new ArrayList<>();
+	/**
+	 * Run after the next successful flush. Guarded by lock.
+	 */
+	private static List<Runnable> pendingCallbacks = new ArrayList<>();
+	/**
+	 * {@link System#nanoTime()} the oldest waiting write was marked, 0 if none.
+	 * Guarded by lock.
+	 */
+	private static long oldestPending;
+
+	/**
+	 * Held while flushing, so flushes happen one at a time and in order.
+	 */
+	private static final Object flushLock = new Object();
+
+	private static ScheduledExecutorService writer;
+	private static final AtomicBoolean flushQueued = new AtomicBoolean();
+	private static int failedFlushes;
+
+	private static final AtomicLong markedWrites = new AtomicLong();
+	private static final AtomicLong coalescedWrites = new AtomicLong();
+	private static final AtomicLong flushedWrites = new AtomicLong();
+	private static final AtomicLong flushCount = new AtomicLong();
+	private static final AtomicLong failedFlushCount = new AtomicLong();
+	private static volatile long lastFlushNanos;
+	/**
+	 * Moving average of flush time, in nanoseconds. Guarded by flushLock.
+	 */
+	private static long averageFlushNanos;
+	private static volatile int lastFlushSize;
+
+	private WriteBehindQueue() {
+	}
+
+	/**
+	 * Loads write-behind settings and, if enabled, starts the background writer.
+	 * Must be called after Hibernate is set up and before the game world is
+	 * loaded.
+	 */
+	public static void setupWriteBehind() {
+		String enabledSetting = ConfigLoader.getSetting("persistWriteBehind");
+		enabled = (enabledSetting == null) || Boolean.parseBoolean(enabledSetting.trim());
+		maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10, MathUtils
+				.parseInt(ConfigLoader.getSetting("persistMaxStalenessMillis"), DEFAULT_MAX_STALENESS_MILLIS)));
+		flushBatchSize = Math.max(1,
+				MathUtils.parseInt(ConfigLoader.getSetting("persistFlushBatchSize"), DEFAULT_FLUSH_BATCH_SIZE));
+
+		if (!enabled) {
+			MyLogger.log(Level.INFO, "WriteBehindQueue: Saving changes straight away.");
+			return;
+		}
+
+		// Checking twice as often as the limit keeps writes under it, with time to
+		// flush.
+		long interval = Math.max(1, maxStalenessNanos / 2);
+		writer = Executors.newSingleThreadScheduledExecutor();
+		writer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				flushFromWriter();
+			}
+		}, interval, interval, TimeUnit.NANOSECONDS);
+
+		MyLogger.log(Level.INFO,
+				String.format("WriteBehindQueue: Saving changes within %dms, in batches of %d.",
+						TimeUnit.NANOSECONDS.toMillis(maxStalenessNanos), flushBatchSize));
+	}
+
+	/**
+	 * Stops the background writer and flushes everything still waiting, on the
+	 * calling thread. Must be called on application shutdown, before Hibernate is
+	 * closed.
+	 */
+	public static void shutdownWriteBehind() {
+		ScheduledExecutorService writer = WriteBehindQueue.writer;
+		if (writer == null) {
+			return;
+		}
+		enabled = false;
+		writer.shutdown();
+		try {
+			writer.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			MyLogger.log(Level.WARNING, "WriteBehindQueue: Interrupted while waiting for the writer to stop.", e);
+		}
+
+		try {
+			flush();
+		} catch (CheckedHibernateException e) {
+			MyLogger.log(Level.SEVERE,
+					String.format("WriteBehindQueue: Failed to flush on shutdown, %d change(s) not saved.",
+							getQueueDepth()),
+					e);
+		}
+	}
+
+	/**
+	 * @return true if changes are saved by the background writer, false if they
+	 *         must be saved straight away
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Queues the entity to be saved with the next flush.
+	 *
+	 * @param entity Hibernate entity
+	 */
+	public static void markDirty(Object entity) {
+		synchronized (lock) {
+			mark(entity, false);
+		}
+		checkBatchSize();
+	}
+
+	/**
+	 * Queues the entity to be deleted with the next flush.
+	 *
+	 * @param entity Hibernate entity
+	 */
+	public static void markDeleted(Object entity) {
+		synchronized (lock) {
+			mark(entity, true);
+		}
+		checkBatchSize();
+	}
+
+	/**
+	 * Queues the entities to be saved and deleted in the same flush, so they are
+	 * saved in one transaction.
+	 *
+	 * @param saved         entities to save, in order
+	 * @param deleted       entities to delete
+	 * @param afterFlushing run once they are saved, or null
+	 */
+	public static void markAll(List<?> saved, List<?> deleted, Runnable afterFlushing) {
+		synchronized (lock) {
+			for (Object entity : saved) {
+				mark(entity, false);
+			}
+			for (Object entity : deleted) {
+				mark(entity, true);
+			}
+			if (afterFlushing != null) {
+				pendingCallbacks.add(afterFlushing);
+			}
+		}
+		checkBatchSize();
+	}
+
+	/**
+	 * Runs the task once everything marked so far is saved, from the writer.
+	 *
+	 * @param task task to run
+	 */
+	public static void afterFlush(Runnable task) {
+		synchronized (lock) {
+			pendingCallbacks.add(task);
+		}
+	}
+
+	/**
+	 * Must be called holding lock.
+	 */
+	private static void mark(Object entity, boolean delete) {
+		markedWrites.incrementAndGet();
+		PendingWrite write = pending.get(entity);
+		if (write != null) {
+			coalescedWrites.incrementAndGet();
+			write.delete = delete;
+			return;
+		}
+
+		write = new PendingWrite(entity, delete);
+		pending.put(entity, write);
+		pendingOrder.add(write);
+		if (oldestPending == 0) {
+			oldestPending = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Starts a flush early if a full batch is waiting.
+	 */
+	private static void checkBatchSize() {
+		ScheduledExecutorService writer = WriteBehindQueue.writer;
+		if ((writer != null) && (getQueueDepth() >= flushBatchSize) && flushQueued.compareAndSet(false, true)) {
+			try {
+				writer.execute(new Runnable() {
+					@Override
+					public void run() {
+						flushQueued.set(false);
+						flushFromWriter();
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				// Shutting down, flushed by shutdownWriteBehind.
+				flushQueued.set(false);
+			}
+		}
+	}
+
+	/**
+	 * @return number of entities waiting to be written
+	 */
+	public static int getQueueDepth() {
+		synchronized (lock) {
+			return pendingOrder.size();
+		}
+	}
+
+	/**
+	 * Flush run by the writer, treating repeated failures as fatal.
+	 */
+	private static void flushFromWriter() {
+		try {
+			flush();
+			failedFlushes = 0;
+		} catch (CheckedHibernateException e) {
+			failedFlushes++;
+			if (failedFlushes >= MAX_FAILED_FLUSHES) {
+				FireEngineMain.hibernateException(e);
+			} else {
+				MyLogger.log(Level.WARNING,
+						String.format("WriteBehindQueue: Flush failed, retrying with the next (%d of %d).",
+								failedFlushes, MAX_FAILED_FLUSHES),
+						e);
+			}
+		} catch (RuntimeException e) {
+			// Keep the writer running.
+			MyLogger.log(Level.SEVERE, "WriteBehindQueue: Exception while flushing.", e);
+		}
+	}
+
+	/**
+	 * Saves everything waiting in one transaction, on the calling thread. Used
+	 * when a change must be in the database before carrying on, such as before
+	 * querying for it.
+	 *
+	 * @throws CheckedHibernateException hibernate exception, in which case the
+	 *                                   writes are put back to be tried again
+	 */
+	public static void flush() throws CheckedHibernateException {
+		synchronized (flushLock) {
+			List<PendingWrite> writes;
+			List<Runnable> callbacks;
+			synchronized (lock) {
+				if (pendingOrder.isEmpty() && pendingCallbacks.isEmpty()) {
+					return;
+				}
+				writes = pendingOrder;
+				callbacks = pendingCallbacks;
+				pending = new IdentityHashMap<>();
+				pendingOrder = new ArrayList<>();
+				pendingCallbacks = new ArrayList<>();
+				oldestPending = 0;
+			}
+
+			long start = System.nanoTime();
+			if (!writes.isEmpty()) {
+				try {
+					write(writes);
+				} catch (CheckedHibernateException | RuntimeException e) {
+					requeue(writes, callbacks, start);
+					failedFlushCount.incrementAndGet();
+					throw e;
+				}
+			}
+			long time = System.nanoTime() - start;
+
+			flushCount.incrementAndGet();
+			flushedWrites.addAndGet(writes.size());
+			lastFlushNanos = time;
+			lastFlushSize = writes.size();
+			averageFlushNanos = (averageFlushNanos == 0) ? time : (averageFlushNanos + ((time - averageFlushNanos) / 8));
+
+			for (Runnable callback : callbacks) {
+				try {
+					callback.run();
+				} catch (RuntimeException e) {
+					MyLogger.log(Level.SEVERE, "WriteBehindQueue: Exception in after flush task.", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param entity entity to be saved
+	 * @param copies copies already taken for this flush, by entity
+	 * @return copy of the entity to save, the same copy for the same entity within
+	 *         a flush, or the entity itself if not {@link Copyable}
+	 */
+	public static Object copyForWrite(Object entity, Map<Object, Object> copies) {
+		if (!(entity instanceof Copyable)) {
+			return entity;
+		}
+		Object copy = copies.get(entity);
+		if (copy == null) {
+			copy = ((Copyable) entity).copyForWrite(copies);
+			copies.put(entity, copy);
+		}
+		return copy;
+	}
+
+	private static void write(List<PendingWrite> writes) throws CheckedHibernateException {
+		// Copied before the Session is opened, so no monitor is waited on or held with
+		// it open.
+		IdentityHashMap<Object, Object> copies = new IdentityHashMap<>();
+		List<Object> saved = new ArrayList<>(writes.size());
+		for (PendingWrite write : writes) {
+			if (!write.delete) {
+				saved.add(copyForWrite(write.entity, copies));
+			}
+		}
+
+		org.hibernate.Session hibSess = null;
+		Transaction tx = null;
+
+		try {
+			hibSess = FireEngineMain.hibSessFactory.openSession();
+			hibSess.setJdbcBatchSize(flushBatchSize);
+			tx = hibSess.beginTransaction();
+
+			boolean hasDeletes = false;
+			for (Object entity : saved) {
+				hibSess.saveOrUpdate(entity);
+			}
+			for (PendingWrite write : writes) {
+				if (write.delete) {
+					hasDeletes = true;
+				}
+			}
+			if (hasDeletes) {
+				// Rows referring to deleted entities are updated first.
+				hibSess.flush();
+				for (PendingWrite write : writes) {
+					if (write.delete) {
+						hibSess.delete(write.entity);
+					}
+				}
+			}
+
+			tx.commit();
+		} catch (HibernateException e) {
+			if (tx != null) {
+				tx.rollback();
+			}
+			throw new CheckedHibernateException("WriteBehindQueue: Hibernate error while trying to flush.", e);
+		} finally {
+			if (hibSess != null) {
+				hibSess.close();
+			}
+		}
+	}
+
+	/**
+	 * Puts failed writes back ahead of those marked since, keeping entities marked
+	 * again in their original place.
+	 */
+	private static void requeue(List<PendingWrite> writes, List<Runnable> callbacks, long markedAt) {
+		synchronized (lock) {
+			IdentityHashMap<Object, PendingWrite> newPending = new IdentityHashMap<>();
+			List<PendingWrite> newOrder = new ArrayList<>();
+			for (PendingWrite write : writes) {
+				PendingWrite newer = pending.get(write.entity);
+				PendingWrite kept = (newer != null) ? newer : write;
+				newPending.put(write.entity, kept);
+				newOrder.add(kept);
+			}
+			for (PendingWrite write : pendingOrder) {
+				if (!newPending.containsKey(write.entity)) {
+					newPending.put(write.entity, write);
+					newOrder.add(write);
+				}
+			}
+			callbacks.addAll(pendingCallbacks);
+
+			pending = newPending;
+			pendingOrder = newOrder;
+			pendingCallbacks = callbacks;
+			oldestPending = markedAt;
+		}
+	}
+
+	/**
+	 * Returns write-behind metrics for display to Admins: queue depth and age,
+	 * flush times and counts of writes.
+	 *
+	 * @return {@link ClientConnectionOutput} of write-behind metrics
+	 */
+	public static ClientConnectionOutput getWriteBehindInfo() {
+		ClientConnectionOutput output = new ClientConnectionOutput();
+		if (writer == null) {
+			output.addPart("Write-behind persistence is disabled, changes are saved straight away.", null, null);
+			return output;
+		}
+
+		int depth;
+		long oldest;
+		synchronized (lock) {
+			depth = pendingOrder.size();
+			oldest = oldestPending;
+		}
+		long average;
+		synchronized (flushLock) {
+			average = averageFlushNanos;
+		}
+
+		output.addPart(String.format("Write-behind persistence (at most %dms stale, batches of %d):",
+				TimeUnit.NANOSECONDS.toMillis(maxStalenessNanos), flushBatchSize), null, null);
+		output.newLine();
+		output.addPart(String.format("  Queue: %d waiting, oldest %dms.", depth,
+				(oldest == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest)), null, null);
+		output.newLine();
+		output.addPart(String.format("  Flushes: %d, %d failed, last %.1fms for %d write(s), %.1fms average.",
+				flushCount.get(), failedFlushCount.get(), lastFlushNanos / 1000000.0, lastFlushSize,
+				average / 1000000.0), null, null);
+		output.newLine();
+		output.addPart(String.format("  Writes: %d marked, %d coalesced, %d flushed.", markedWrites.get(),
+				coalescedWrites.get(), flushedWrites.get()), null, null);
+		return output;
+	}
+}